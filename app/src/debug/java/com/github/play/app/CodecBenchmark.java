@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.app;
+
+import android.os.Parcel;
+
+import com.github.play.core.Song;
+import com.github.play.core.StatusCodec;
+import com.github.play.core.StatusUpdate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Benchmark of encoding and decoding status updates with Java serialization,
+ * parcels and the {@link StatusCodec}
+ * <p>
+ * This class is only compiled into debug builds and is looked up by name from
+ * the {@link DebugActivity}
+ */
+public class CodecBenchmark {
+
+	/**
+	 * Codec being benchmarked
+	 */
+	private static enum Codec {
+
+		/**
+		 * Java serialization
+		 */
+		SERIALIZABLE("Serializable"),
+
+		/**
+		 * Parcels
+		 */
+		PARCELABLE("Parcelable"),
+
+		/**
+		 * {@link StatusCodec}
+		 */
+		STATUS_CODEC("Codec");
+
+		/**
+		 * Name displayed in the results
+		 */
+		final String label;
+
+		Codec(final String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Encode and decode update
+		 *
+		 * @param update
+		 * @return encoded size in bytes
+		 * @throws IOException
+		 */
+		int run(final StatusUpdate update) throws IOException {
+			switch (this) {
+			case SERIALIZABLE:
+				return serialize(update);
+			case PARCELABLE:
+				return parcel(update);
+			default:
+				return encode(update);
+			}
+		}
+	}
+
+	/**
+	 * Serializable copy of a song used to measure Java serialization
+	 */
+	private static class SerializedSong implements Serializable {
+
+		private static final long serialVersionUID = 4316108255946574236L;
+
+		final String id;
+
+		final String name;
+
+		final String artist;
+
+		final String album;
+
+		final boolean starred;
+
+		final double duration;
+
+		SerializedSong(final Song song) {
+			id = song.id;
+			name = song.name;
+			artist = song.artist;
+			album = song.album;
+			starred = song.starred;
+			duration = song.duration;
+		}
+
+		Song toSong() {
+			return new Song(id, name, artist, album, starred, duration);
+		}
+	}
+
+	/**
+	 * Serializable copy of a status update used to measure Java serialization
+	 */
+	private static class SerializedUpdate implements Serializable {
+
+		private static final long serialVersionUID = -5316693651367236306L;
+
+		final SerializedSong playing;
+
+		final SerializedSong[] queued;
+
+		SerializedUpdate(final StatusUpdate update) {
+			playing = new SerializedSong(update.playing);
+			queued = new SerializedSong[update.queued.length];
+			for (int i = 0; i < queued.length; i++)
+				queued[i] = new SerializedSong(update.queued[i]);
+		}
+
+		StatusUpdate toUpdate() {
+			Song[] songs = new Song[queued.length];
+			for (int i = 0; i < songs.length; i++)
+				songs[i] = queued[i].toSong();
+			return new StatusUpdate(playing.toSong(), songs);
+		}
+	}
+
+	/**
+	 * Queue sizes to benchmark
+	 */
+	private static final int[] SIZES = new int[] { 10, 100, 1000, 5000 };
+
+	/**
+	 * Number of songs encoded and decoded per codec and size
+	 */
+	private static final int SONGS_PER_RUN = 20000;
+
+	/**
+	 * Create update with a queue of the given size
+	 * <p>
+	 * Songs are spread over one artist per 20 songs and one album per 10
+	 * songs
+	 *
+	 * @param size
+	 * @return update
+	 */
+	private static StatusUpdate createUpdate(final int size) {
+		Song[] queued = new Song[size];
+		for (int i = 0; i < size; i++)
+			queued[i] = new Song(Integer.toString(100000 + i), "Song " + i,
+					"Artist " + i / 20, "Album " + i / 10, i % 7 == 0,
+					180 + i % 120);
+		return new StatusUpdate(new Song("99999", "Playing", "Artist",
+				"Album", false, 200), queued);
+	}
+
+	private static int serialize(final StatusUpdate update) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(new SerializedUpdate(update));
+		output.close();
+
+		ObjectInputStream input = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			((SerializedUpdate) input.readObject()).toUpdate();
+		} catch (ClassNotFoundException e) {
+			IOException error = new IOException(e.getMessage());
+			error.initCause(e);
+			throw error;
+		} finally {
+			input.close();
+		}
+		return bytes.size();
+	}
+
+	private static int parcel(final StatusUpdate update) {
+		Parcel parcel = Parcel.obtain();
+		try {
+			update.writeToParcel(parcel, 0);
+			int size = parcel.dataSize();
+			parcel.setDataPosition(0);
+			StatusUpdate.CREATOR.createFromParcel(parcel);
+			return size;
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	private static int encode(final StatusUpdate update) throws IOException {
+		byte[] bytes = StatusCodec.encode(update);
+		StatusCodec.decode(bytes);
+		return bytes.length;
+	}
+
+	/**
+	 * Run benchmark and append results as text
+	 * <p>
+	 * This takes several seconds and should not be called from the main
+	 * thread
+	 *
+	 * @param text
+	 * @throws IOException
+	 */
+	public static void run(final StringBuilder text) throws IOException {
+		text.append("Codec benchmark (encode + decode)\n");
+		for (int size : SIZES) {
+			StatusUpdate update = createUpdate(size);
+			int runs = Math.max(1, SONGS_PER_RUN / size);
+			text.append("  ").append(size).append(" songs, ").append(runs)
+					.append(" runs\n");
+			for (Codec codec : Codec.values()) {
+				// Warm up before measuring
+				int bytes = codec.run(update);
+				long start = System.nanoTime();
+				for (int i = 0; i < runs; i++)
+					codec.run(update);
+				long micros = (System.nanoTime() - start) / 1000 / runs;
+				text.append("    ").append(codec.label).append(": ")
+						.append(micros).append("us, ").append(bytes)
+						.append(" bytes\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.graphics.Bitmap.Config.RGB_565;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Debug;
+
+import com.github.play.R.drawable;
+import com.github.play.core.PlayService;
+import com.github.play.core.Song;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmark of the album art lookups done for every list row that is bound
+ * <p>
+ * Measures the time and allocations of computing album keys and of memory
+ * cache hits of {@link SongArtWrapper#getCachedArt(int, Song)}. Allocations
+ * are counted for the benchmark thread only.
+ * <p>
+ * This class is only compiled into debug builds and is looked up by name from
+ * the debug activity
+ */
+public class ArtCacheBenchmark {
+
+	/**
+	 * Number of albums looked up, small enough to stay in memory on any tier
+	 */
+	private static final int ALBUMS = 10;
+
+	/**
+	 * Number of lookups measured
+	 */
+	private static final int LOOKUPS = 100000;
+
+	/**
+	 * Run benchmark and append results as text
+	 * <p>
+	 * Placeholder art is added to the memory cache for the benchmark albums
+	 * and removed again once done. This should not be called from the main
+	 * thread.
+	 *
+	 * @param context
+	 * @param text
+	 */
+	public static void run(final Context context, final StringBuilder text) {
+		SongArtWrapper wrapper = new SongArtWrapper(context,
+				new AtomicReference<PlayService>());
+		Bitmap art = Bitmap.createBitmap(1, 1, RGB_565);
+		Song[] songs = new Song[ALBUMS];
+		String[] keys = new String[ALBUMS];
+		for (int i = 0; i < ALBUMS; i++) {
+			songs[i] = new Song(Integer.toString(i), "Song " + i,
+					"Benchmark artist", "Benchmark album " + i, false, 0);
+			keys[i] = SongArtWrapper.getKey(songs[i]);
+			SongArtWrapper.putCachedBitmap(keys[i], art);
+		}
+
+		text.append("Art cache benchmark (").append(LOOKUPS)
+				.append(" lookups)\n");
+		try {
+			measure(text, "Key", null, songs);
+			measure(text, "Cached art", wrapper, songs);
+		} finally {
+			for (String key : keys)
+				SongArtWrapper.removeCachedArt(key);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void measure(final StringBuilder text, final String name,
+			final SongArtWrapper wrapper, final Song[] songs) {
+		// Warm up so keys and drawables are cached before measuring
+		lookup(wrapper, songs, songs.length);
+
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+		long start = System.nanoTime();
+		lookup(wrapper, songs, LOOKUPS);
+		long nanos = (System.nanoTime() - start) / LOOKUPS;
+		Debug.stopAllocCounting();
+
+		text.append("  ").append(name).append(": ").append(nanos)
+				.append("ns, ").append(Debug.getThreadAllocCount())
+				.append(" allocations, ").append(Debug.getThreadAllocSize())
+				.append(" bytes\n");
+	}
+
+	/**
+	 * Look up songs round robin
+	 *
+	 * @param wrapper
+	 *            to get cached art from or null to only get keys
+	 * @param songs
+	 * @param count
+	 */
+	private static void lookup(final SongArtWrapper wrapper,
+			final Song[] songs, final int count) {
+		for (int i = 0; i < count; i++) {
+			Song song = songs[i % songs.length];
+			if (wrapper != null)
+				wrapper.getCachedArt(drawable.queued_cd, song);
+			else
+				SongArtWrapper.getKey(song);
+		}
+	}
+}
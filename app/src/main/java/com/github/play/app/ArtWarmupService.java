@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.app;
+
+import static android.app.AlarmManager.ELAPSED_REALTIME;
+import static android.app.AlarmManager.INTERVAL_HALF_DAY;
+import static android.app.AlarmManager.INTERVAL_HOUR;
+import static android.app.PendingIntent.FLAG_NO_CREATE;
+import static android.content.Context.ALARM_SERVICE;
+import static android.content.Context.MODE_PRIVATE;
+import static android.content.Intent.ACTION_BATTERY_CHANGED;
+import static android.os.BatteryManager.EXTRA_PLUGGED;
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.github.play.core.PlayPreferences;
+import com.github.play.core.PlayService;
+import com.github.play.core.Song;
+import com.github.play.widget.ArtCacheMaintenance;
+import com.github.play.widget.ArtPrefetcher;
+import com.github.play.widget.KnownSongs;
+import com.github.play.widget.SongArtWrapper;
+
+import java.util.List;
+
+/**
+ * Service that downloads art for the albums of all known songs ahead of time
+ * <p>
+ * The service runs periodically and when the device starts charging. It only
+ * runs while the device is charging, maintains the art cache on disk and then
+ * downloads if the network is unmetered. Each run downloads at most
+ * {@link #BYTE_BUDGET} bytes and resumes after the last album of the previous
+ * run. Warming stops once the art cache reaches {@link #CACHE_LIMIT} so
+ * warmed art is never evicted to make room for more warmed art.
+ */
+public class ArtWarmupService extends IntentService {
+
+	/**
+	 * Receiver that starts the service when the device starts charging
+	 */
+	public static class PowerReceiver extends BroadcastReceiver {
+
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			start(context);
+		}
+	}
+
+	/**
+	 * Progress of warming up art
+	 */
+	public static class Progress {
+
+		/**
+		 * Number of known albums processed in the current pass
+		 */
+		public final int position;
+
+		/**
+		 * Number of known albums when progress was last saved
+		 */
+		public final int total;
+
+		/**
+		 * Number of bytes downloaded in the last run
+		 */
+		public final long bytes;
+
+		/**
+		 * Time of the last run, 0 if never run
+		 */
+		public final long lastRun;
+
+		private Progress(final int position, final int total,
+				final long bytes, final long lastRun) {
+			this.position = position;
+			this.total = total;
+			this.bytes = bytes;
+			this.lastRun = lastRun;
+		}
+	}
+
+	/**
+	 * Action to use for intents
+	 */
+	private static final String ACTION = "com.github.play.action.WARM_ART";
+
+	private static final String TAG = "ArtWarmupService";
+
+	/**
+	 * Maximum number of bytes downloaded in a single run
+	 */
+	private static final long BYTE_BUDGET = 5 * 1024 * 1024;
+
+	/**
+	 * Size of the art cache above which no art is warmed, leaving the rest of
+	 * {@link ArtCacheMaintenance#MAX_SIZE} for art loaded while browsing
+	 */
+	private static final long CACHE_LIMIT = ArtCacheMaintenance.MAX_SIZE / 2;
+
+	/**
+	 * Number of albums between checks that the device is still charging on an
+	 * unmetered network
+	 */
+	private static final int CHECK_INTERVAL = 10;
+
+	private static final String PREFERENCES = "art-warmup";
+
+	private static final String CURSOR = "cursor";
+
+	private static final String POSITION = "position";
+
+	private static final String TOTAL = "total";
+
+	private static final String BYTES = "bytes";
+
+	private static final String LAST_RUN = "lastRun";
+
+	/**
+	 * Schedule service to run periodically if not already scheduled
+	 *
+	 * @param context
+	 */
+	public static void schedule(final Context context) {
+		Intent intent = new Intent(ACTION);
+		if (PendingIntent.getService(context, 0, intent, FLAG_NO_CREATE) != null)
+			return;
+
+		AlarmManager alarms = (AlarmManager) context
+				.getSystemService(ALARM_SERVICE);
+		alarms.setInexactRepeating(ELAPSED_REALTIME,
+				SystemClock.elapsedRealtime() + INTERVAL_HOUR,
+				INTERVAL_HALF_DAY,
+				PendingIntent.getService(context, 0, intent, 0));
+	}
+
+	/**
+	 * Start service to run now
+	 * <p>
+	 * The service still only runs while charging and only downloads on an
+	 * unmetered network
+	 *
+	 * @param context
+	 */
+	public static void start(final Context context) {
+		context.startService(new Intent(ACTION));
+	}
+
+	/**
+	 * Get progress of warming up art
+	 *
+	 * @param context
+	 * @return progress
+	 */
+	public static Progress getProgress(final Context context) {
+		SharedPreferences preferences = context.getSharedPreferences(
+				PREFERENCES, MODE_PRIVATE);
+		return new Progress(preferences.getInt(POSITION, 0),
+				preferences.getInt(TOTAL, 0), preferences.getLong(BYTES, 0),
+				preferences.getLong(LAST_RUN, 0));
+	}
+
+	private static boolean isCharging(final Context context) {
+		Intent battery = context.registerReceiver(null, new IntentFilter(
+				ACTION_BATTERY_CHANGED));
+		return battery != null && battery.getIntExtra(EXTRA_PLUGGED, 0) != 0;
+	}
+
+	private static boolean canDownload(final Context context) {
+		return isCharging(context) && ArtPrefetcher.isUnmetered(context);
+	}
+
+	/**
+	 * Create service
+	 */
+	public ArtWarmupService() {
+		super(TAG);
+	}
+
+	@Override
+	protected void onHandleIntent(Intent intent) {
+		if (!isCharging(this)) {
+			Log.d(TAG, "Skipping art warm up when not charging");
+			return;
+		}
+
+		ArtCacheMaintenance.maintain(this);
+
+		if (!ArtPrefetcher.isUnmetered(this)) {
+			Log.d(TAG, "Skipping art warm up when not on Wi-Fi");
+			return;
+		}
+
+		PlayPreferences settings = new PlayPreferences(this);
+		if (settings.getUrl() == null || settings.getToken() == null)
+			return;
+
+		long budget = Math.min(BYTE_BUDGET, CACHE_LIMIT
+				- ArtCacheMaintenance.getStats(this).size);
+		if (budget <= 0) {
+			Log.d(TAG, "Skipping art warm up when the art cache is full");
+			return;
+		}
+
+		PlayService service = new PlayService(settings.getUrl(),
+				settings.getToken());
+		List<Song> songs = KnownSongs.get(this).getAll();
+		SharedPreferences preferences = getSharedPreferences(PREFERENCES,
+				MODE_PRIVATE);
+
+		int start = 0;
+		String cursor = preferences.getString(CURSOR, null);
+		if (cursor != null)
+			for (int i = 0; i < songs.size(); i++)
+				if (cursor.equals(songs.get(i).getAlbumId())) {
+					start = i + 1;
+					break;
+				}
+		// Start another pass once every known album has been visited
+		if (start >= songs.size())
+			start = 0;
+
+		long bytes = 0;
+		int position = start;
+		while (position < songs.size() && bytes < budget) {
+			if (position > start && (position - start) % CHECK_INTERVAL == 0) {
+				saveProgress(preferences, songs, position, bytes);
+				if (!canDownload(this))
+					break;
+			}
+			bytes += SongArtWrapper.warm(this, service, songs.get(position));
+			position++;
+		}
+		saveProgress(preferences, songs, position, bytes);
+
+		Log.d(TAG, "Warmed art for albums " + start + " to " + position
+				+ " of " + songs.size() + ", downloaded " + bytes + " bytes");
+	}
+
+	private void saveProgress(final SharedPreferences preferences,
+			final List<Song> songs, final int position, final long bytes) {
+		SharedPreferences.Editor editor = preferences.edit();
+		if (position > 0)
+			editor.putString(CURSOR, songs.get(position - 1).getAlbumId());
+		else
+			editor.remove(CURSOR);
+		editor.putInt(POSITION, position);
+		editor.putInt(TOTAL, songs.size());
+		editor.putLong(BYTES, bytes);
+		editor.putLong(LAST_RUN, System.currentTimeMillis());
+		editor.commit();
+	}
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.app;
+
+import static android.content.Intent.FLAG_ACTIVITY_CLEAR_TOP;
+import static android.content.Intent.FLAG_ACTIVITY_SINGLE_TOP;
+import static android.content.pm.ApplicationInfo.FLAG_DEBUGGABLE;
+import static com.github.kevinsawicki.http.HttpRequest.CHARSET_UTF8;
+import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.widget.TextView;
+
+import com.actionbarsherlock.app.SherlockActivity;
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuItem;
+import com.github.kevinsawicki.wishlist.Toaster;
+import com.github.kevinsawicki.wishlist.ViewFinder;
+import com.github.play.R.id;
+import com.github.play.R.layout;
+import com.github.play.R.menu;
+import com.github.play.R.string;
+import com.github.play.core.EventTrace;
+import com.github.play.core.PlayPreferences;
+import com.github.play.core.StatusStats;
+import com.github.play.widget.ArtCacheMaintenance;
+import com.github.play.widget.ArtCacheMaintenance.Stats;
+import com.github.play.widget.ArtPack;
+import com.github.play.widget.ArtStats;
+import com.github.play.widget.MissingArtCache;
+import com.github.play.widget.SongArtWrapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Activity to display diagnostic information about the caches and services
+ * of the application
+ */
+public class DebugActivity extends SherlockActivity {
+
+	/**
+	 * Name of the status event trace file in the debug directory that events
+	 * are recorded to and replayed from
+	 */
+	private static final String EVENT_TRACE = "play-events.trace";
+
+	/**
+	 * Name of the codec benchmark class that is only compiled into debug
+	 * builds
+	 */
+	private static final String CODEC_BENCHMARK = "com.github.play.app.CodecBenchmark";
+
+	/**
+	 * Name of the art cache benchmark class that is only compiled into debug
+	 * builds
+	 */
+	private static final String ART_CACHE_BENCHMARK = "com.github.play.widget.ArtCacheBenchmark";
+
+	/**
+	 * Coalesce windows in milliseconds cycled through from the menu
+	 */
+	private static final int[] COALESCE_WINDOWS = new int[] { 0,
+			PlayPreferences.DEFAULT_COALESCE_WINDOW, 1000 };
+
+	private static final String[] AGE_LABELS = new String[] { "< 1 day ago",
+			"< 1 week ago", "< 1 month ago", "earlier" };
+
+	/**
+	 * Is the application debuggable?
+	 *
+	 * @param context
+	 * @return true if debuggable, false otherwise
+	 */
+	public static boolean isEnabled(final Context context) {
+		return (context.getApplicationInfo().flags & FLAG_DEBUGGABLE) != 0;
+	}
+
+	/**
+	 * Get the method running a benchmark
+	 * <p>
+	 * The last parameter of every benchmark is the text to append results to
+	 *
+	 * @param name
+	 *            of the benchmark class
+	 * @param parameters
+	 *            types of the parameters of the method
+	 * @return method or null if the benchmark isn't in this build
+	 */
+	private static Method getBenchmark(final String name,
+			final Class<?>... parameters) {
+		try {
+			return Class.forName(name).getMethod("run", parameters);
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private TextView debugText;
+
+	/**
+	 * Get file in the directory debug files are exported to and imported from
+	 * <p>
+	 * This is the application's directory in external storage, or its files
+	 * directory when external storage isn't writable without the external
+	 * storage permission on older devices
+	 *
+	 * @param name
+	 * @return file
+	 */
+	private File getDebugFile(final String name) {
+		File directory = getExternalFilesDir(null);
+		if (directory == null || !directory.canWrite())
+			directory = getFilesDir();
+		return new File(directory, name);
+	}
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		setContentView(layout.debug);
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+		debugText = new ViewFinder(this).find(id.tv_debug);
+
+		refresh();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu optionsMenu) {
+		getSupportMenuInflater().inflate(menu.debug, optionsMenu);
+		return true;
+	}
+
+	@Override
+	public boolean onPrepareOptionsMenu(Menu optionsMenu) {
+		optionsMenu.findItem(id.m_record_events).setChecked(
+				EventTrace.isRecording());
+		optionsMenu.findItem(id.m_benchmark_codecs).setVisible(
+				getCodecBenchmark() != null);
+		optionsMenu.findItem(id.m_benchmark_art_cache).setVisible(
+				getArtCacheBenchmark() != null);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+		case android.R.id.home:
+			Intent intent = new Intent(this, PlayActivity.class);
+			intent.addFlags(FLAG_ACTIVITY_CLEAR_TOP | FLAG_ACTIVITY_SINGLE_TOP);
+			startActivity(intent);
+			return true;
+		case id.m_refresh:
+			refresh();
+			return true;
+		case id.m_export_dump:
+			exportDump();
+			return true;
+		case id.m_reset_stats:
+			StatusStats.reset();
+			ArtStats.reset();
+			refresh();
+			return true;
+		case id.m_benchmark_codecs:
+			runBenchmark(getCodecBenchmark());
+			return true;
+		case id.m_benchmark_art_cache:
+			runBenchmark(getArtCacheBenchmark(), getApplicationContext());
+			return true;
+		case id.m_warm_art:
+			ArtWarmupService.start(getApplicationContext());
+			return true;
+		case id.m_coalesce_window:
+			cycleCoalesceWindow();
+			refresh();
+			return true;
+		case id.m_record_events:
+			recordEvents(!item.isChecked());
+			return true;
+		case id.m_replay_events:
+			replayEvents(false);
+			return true;
+		case id.m_replay_events_realtime:
+			replayEvents(true);
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	private void appendArtCache(final StringBuilder text, final Stats stats) {
+		text.append("Art cache\n");
+		text.append("  Tier: ").append(SongArtWrapper.getTier()).append('\n');
+		text.append("  Flattened: ").append(SongArtWrapper.isFlattened())
+				.append('\n');
+		text.append("  Files: ").append(stats.files).append('\n');
+		text.append("  Size: ").append(stats.size / 1024).append(" KB\n");
+		for (int i = 0; i < stats.ages.length; i++)
+			text.append("  Fetched ").append(AGE_LABELS[i]).append(": ")
+					.append(stats.ages[i]).append('\n');
+		for (int i = 0; i < stats.lastUsed.length; i++)
+			text.append("  Last used ").append(AGE_LABELS[i]).append(": ")
+					.append(stats.lastUsed[i]).append('\n');
+		ArtPack pack = SongArtWrapper.getPack(getApplicationContext());
+		text.append("  Pack: ")
+				.append(pack != null ? pack.size() + " images" : "none")
+				.append('\n');
+		text.append("  Missing: ")
+				.append(MissingArtCache.get(getApplicationContext()).size())
+				.append(" albums, ")
+				.append(ArtStats.getNegativeHits())
+				.append(" requests avoided\n");
+	}
+
+	private void appendArtWarmup(final StringBuilder text,
+			final ArtWarmupService.Progress progress) {
+		text.append("Art warm up\n");
+		text.append("  Albums: ").append(progress.position).append(" of ")
+				.append(progress.total).append('\n');
+		text.append("  Last run: ");
+		if (progress.lastRun > 0)
+			text.append(
+					DateUtils.getRelativeTimeSpanString(progress.lastRun))
+					.append(", ").append(progress.bytes / 1024)
+					.append(" KB downloaded\n");
+		else
+			text.append("never\n");
+	}
+
+	/**
+	 * Create report of all diagnostic information
+	 * <p>
+	 * This reads from disk and should not be called from the main thread
+	 *
+	 * @param context
+	 * @return report
+	 */
+	private String createReport(final Context context) {
+		StringBuilder text = new StringBuilder();
+		appendArtCache(text, ArtCacheMaintenance.getStats(context));
+		appendArtLoading(text);
+		appendArtWarmup(text, ArtWarmupService.getProgress(context));
+		appendStatus(text, context);
+		return text.toString();
+	}
+
+	/**
+	 * Switch to the next coalesce window of {@link #COALESCE_WINDOWS}
+	 * <p>
+	 * The status service reads the window for each event so this takes effect
+	 * immediately
+	 */
+	private void cycleCoalesceWindow() {
+		PlayPreferences settings = new PlayPreferences(this);
+		int current = settings.getCoalesceWindow();
+		int next = COALESCE_WINDOWS[0];
+		for (int i = 0; i < COALESCE_WINDOWS.length - 1; i++)
+			if (COALESCE_WINDOWS[i] == current) {
+				next = COALESCE_WINDOWS[i + 1];
+				break;
+			}
+		settings.setCoalesceWindow(next);
+	}
+
+	private void appendStatus(final StringBuilder text, final Context context) {
+		text.append("Status events\n");
+		text.append("  Coalesce window: ")
+				.append(new PlayPreferences(context).getCoalesceWindow())
+				.append("ms\n");
+		StatusStats.append(text);
+		text.append("  Recording: ").append(EventTrace.isRecording())
+				.append('\n');
+		String replay = StatusService.getReplayReport();
+		if (replay != null)
+			text.append("  Last replay: ").append(replay).append('\n');
+	}
+
+	private File getEventTrace() {
+		return getDebugFile(EVENT_TRACE);
+	}
+
+	/**
+	 * Start or stop recording status events to the trace in the debug
+	 * directory
+	 *
+	 * @param record
+	 */
+	private void recordEvents(final boolean record) {
+		File trace = getEventTrace();
+		if (!record) {
+			EventTrace.stopRecording();
+			Toaster.showLong(this, string.events_recorded, trace);
+			return;
+		}
+
+		try {
+			EventTrace.startRecording(trace);
+			Toaster.showLong(this, string.events_recording, trace);
+		} catch (IOException e) {
+			Toaster.showLong(this, string.events_failed, e.getMessage());
+		}
+	}
+
+	/**
+	 * Replay status events from the trace in the debug directory
+	 *
+	 * @param realtime
+	 */
+	private void replayEvents(final boolean realtime) {
+		File trace = getEventTrace();
+		StatusService.replay(getApplicationContext(), trace, realtime);
+		Toaster.showLong(this, string.events_replaying, trace);
+	}
+
+	private void appendArtLoading(final StringBuilder text) {
+		text.append("Art loading\n");
+		ArtStats.append(text);
+	}
+
+	/**
+	 * Write report to a performance dump file in the debug directory
+	 */
+	private void exportDump() {
+		final Context context = getApplicationContext();
+		final File file = getDebugFile("play-perf-"
+				+ System.currentTimeMillis() + ".txt");
+		new AsyncTask<Void, Void, IOException>() {
+
+			@Override
+			protected IOException doInBackground(Void... params) {
+				Writer writer = null;
+				try {
+					writer = new OutputStreamWriter(new FileOutputStream(file),
+							CHARSET_UTF8);
+					writer.write(Build.MODEL + " API " + Build.VERSION.SDK_INT
+							+ "\n");
+					writer.write(createReport(context));
+					return null;
+				} catch (IOException e) {
+					return e;
+				} finally {
+					if (writer != null)
+						try {
+							writer.close();
+						} catch (IOException ignored) {
+							// Ignored
+						}
+				}
+			}
+
+			@Override
+			protected void onPostExecute(IOException result) {
+				if (result != null)
+					Toaster.showLong(DebugActivity.this, string.dump_failed,
+							result.getMessage());
+				else
+					Toaster.showLong(DebugActivity.this, string.dump_exported,
+							file);
+			}
+		}.execute();
+	}
+
+	private static Method getCodecBenchmark() {
+		return getBenchmark(CODEC_BENCHMARK, StringBuilder.class);
+	}
+
+	private static Method getArtCacheBenchmark() {
+		return getBenchmark(ART_CACHE_BENCHMARK, Context.class,
+				StringBuilder.class);
+	}
+
+	/**
+	 * Run benchmark in the background and append its results to the report
+	 *
+	 * @param benchmark
+	 *            may be null
+	 * @param arguments
+	 *            passed before the text to append results to
+	 */
+	private void runBenchmark(final Method benchmark,
+			final Object... arguments) {
+		if (benchmark == null)
+			return;
+
+		new AsyncTask<Void, Void, CharSequence>() {
+
+			@Override
+			protected CharSequence doInBackground(Void... params) {
+				StringBuilder text = new StringBuilder();
+				Object[] all = new Object[arguments.length + 1];
+				System.arraycopy(arguments, 0, all, 0, arguments.length);
+				all[arguments.length] = text;
+				try {
+					benchmark.invoke(null, all);
+				} catch (InvocationTargetException e) {
+					text.append("  Failed: ")
+							.append(e.getCause().getMessage()).append('\n');
+				} catch (IllegalAccessException e) {
+					text.append("  Failed: ").append(e.getMessage())
+							.append('\n');
+				}
+				return text;
+			}
+
+			@Override
+			protected void onPostExecute(CharSequence result) {
+				debugText.append(result);
+			}
+		}.execute();
+	}
+
+	private void refresh() {
+		final Context context = getApplicationContext();
+		new AsyncTask<Void, Void, CharSequence>() {
+
+			@Override
+			protected CharSequence doInBackground(Void... params) {
+				return createReport(context);
+			}
+
+			@Override
+			protected void onPostExecute(CharSequence result) {
+				debugText.setText(result);
+			}
+		}.execute();
+	}
+}
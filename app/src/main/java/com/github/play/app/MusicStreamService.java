@@ -28,6 +28,8 @@ import android.os.IBinder;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.github.play.core.StatusBus;
+
 import java.io.IOException;
 
 /**
@@ -36,16 +38,6 @@ import java.io.IOException;
 public class MusicStreamService extends Service implements OnPreparedListener,
 		OnErrorListener {
 
-	/**
-	 * Action to use for broadcasting updates
-	 */
-	public static final String UPDATE = "com.github.play.action.STREAMING_UPDATE";
-
-	/**
-	 * Intent extra denoting whether music is currently streaming
-	 */
-	public static final String EXTRA_STREAMING = "streaming";
-
 	/**
 	 * Start streaming service to given URL
 	 *
@@ -136,9 +128,7 @@ public class MusicStreamService extends Service implements OnPreparedListener,
 	}
 
 	private void broadcastStatus(final boolean streaming) {
-		Intent intent = new Intent(UPDATE);
-		intent.putExtra(EXTRA_STREAMING, streaming);
-		sendBroadcast(intent);
+		StatusBus.publishStreaming(streaming);
 	}
 
 	/**
@@ -15,15 +15,16 @@
  */
 package com.github.play.app;
 
-import static com.github.play.app.MusicStreamService.EXTRA_STREAMING;
-import static com.github.play.app.StatusService.EXTRA_UPDATE;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.graphics.drawable.AnimationDrawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -48,11 +49,15 @@ import com.github.play.core.FetchSettingsTask;
 import com.github.play.core.FetchStatusTask;
 import com.github.play.core.PlayPreferences;
 import com.github.play.core.PlayService;
+import com.github.play.core.QueueDelta;
 import com.github.play.core.QueueStarsTask;
 import com.github.play.core.Song;
 import com.github.play.core.SongCallback;
 import com.github.play.core.SongResult;
 import com.github.play.core.StarSongTask;
+import com.github.play.core.StatusBus;
+import com.github.play.core.StatusSnapshot;
+import com.github.play.core.StatusSnapshot.Saved;
 import com.github.play.core.StatusUpdate;
 import com.github.play.core.StreamingInfo;
 import com.github.play.core.UnstarSongTask;
@@ -69,11 +74,6 @@ import java.util.concurrent.atomic.AtomicReference;
 public class PlayActivity extends SherlockActivity implements SongCallback,
 		OnItemClickListener {
 
-	/**
-	 * Action for broadcasting that the queue has been updated
-	 */
-	public static final String ACTION_QUEUE = "com.github.play.action.QUEUE_UPDATE";
-
 	private static final String TAG = "PlayActivity";
 
 	private static final String STREAMING_INFO = "streamingInfo";
@@ -108,38 +108,56 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 
 	private Song nowPlaying;
 
-	private final BroadcastReceiver updateReceiver = new BroadcastReceiver() {
+	/**
+	 * True once a current status was displayed instead of the snapshot
+	 */
+	private boolean hasStatus;
 
-		public void onReceive(Context context, Intent intent) {
-			StatusUpdate update = (StatusUpdate) intent
-					.getSerializableExtra(EXTRA_UPDATE);
-			onUpdate(update.playing, update.queued);
-		}
-	};
+	private boolean statusBound;
 
-	private final BroadcastReceiver queueReceiver = new BroadcastReceiver() {
+	private StatusService.LocalBinder statusBinder;
 
-		public void onReceive(Context context, Intent intent) {
-			runOnUiThread(new Runnable() {
+	/**
+	 * True if the status should be requested once the service is bound
+	 */
+	private boolean statusRequested;
 
-				public void run() {
-					refreshSongs();
-				}
-			});
+	private final ServiceConnection statusConnection = new ServiceConnection() {
+
+		public void onServiceConnected(ComponentName name, IBinder service) {
+			statusBinder = (StatusService.LocalBinder) service;
+			statusBinder.addListener(statusListener);
+			if (statusRequested) {
+				statusRequested = false;
+				requestStatus();
+			}
+		}
+
+		public void onServiceDisconnected(ComponentName name) {
+			statusBinder.removeListener(statusListener);
+			statusBinder = null;
 		}
 	};
 
-	private final BroadcastReceiver streamReceiver = new BroadcastReceiver() {
+	private final StatusBus.Listener statusListener = new StatusBus.Listener() {
 
-		public void onReceive(Context context, Intent intent) {
-			final boolean streaming = intent.getBooleanExtra(EXTRA_STREAMING,
-					false);
-			runOnUiThread(new Runnable() {
+		public void onStatus(StatusUpdate update, long version,
+				QueueDelta delta) {
+			setFresh();
+			if (delta != null && playListAdapter.apply(delta))
+				onDelta(delta);
+			else {
+				nowPlaying = update.playing;
+				updateSongs(update.playing, update.queued, version);
+			}
+		}
 
-				public void run() {
-					setStreaming(streaming);
-				}
-			});
+		public void onStreaming(boolean streaming) {
+			setStreaming(streaming);
+		}
+
+		public void onQueueChanged() {
+			refreshSongs();
 		}
 	};
 
@@ -150,9 +168,11 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		if (!streaming)
 			StatusService.stop(getApplicationContext());
 
-		unregisterReceiver(updateReceiver);
-		unregisterReceiver(streamReceiver);
-		unregisterReceiver(queueReceiver);
+		if (statusBinder != null)
+			statusBinder.removeListener(statusListener);
+		if (statusBound)
+			unbindService(statusConnection);
+		SongArtWrapper.cancel(this);
 	}
 
 	@Override
@@ -160,7 +180,7 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		super.onSaveInstanceState(outState);
 
 		if (hasStreamingInfo())
-			outState.putSerializable(STREAMING_INFO, streamingInfo);
+			outState.putParcelable(STREAMING_INFO, streamingInfo);
 	}
 
 	@Override
@@ -181,9 +201,11 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		});
 
 		playListAdapter = new PlayListAdapter(this, layout.queued, playService);
+		ArtWarmupService.schedule(getApplicationContext());
 
 		listView = finder.find(android.R.id.list);
 		listView.setOnItemClickListener(this);
+		listView.setOnScrollListener(playListAdapter.getScrollListener());
 
 		nowPlayingView = finder.find(id.ll_now_playing);
 		ViewUtils.setGone(nowPlayingView, true);
@@ -197,23 +219,19 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		listView.setAdapter(playListAdapter);
 
 		if (savedInstanceState != null)
-			streamingInfo = (StreamingInfo) savedInstanceState
-					.getSerializable(STREAMING_INFO);
+			streamingInfo = savedInstanceState.getParcelable(STREAMING_INFO);
 
 		settings = new PlayPreferences(this);
+		statusBound = StatusService.bind(this, statusConnection);
 
 		if (hasSettings()) {
 			playService.set(new PlayService(settings.getUrl(), settings
 					.getToken()));
+			loadSnapshot();
 			load();
 		} else
 			startActivityForResult(new Intent(this, SettingsActivity.class),
 					REQUEST_SETTINGS);
-
-		registerReceiver(updateReceiver, new IntentFilter(StatusService.UPDATE));
-		registerReceiver(streamReceiver, new IntentFilter(
-				MusicStreamService.UPDATE));
-		registerReceiver(queueReceiver, new IntentFilter(ACTION_QUEUE));
 	}
 
 	private void setStreaming(final boolean streaming) {
@@ -267,10 +285,34 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 			Context context = getApplicationContext();
 			MusicStreamService.start(context);
 			StatusService.start(context, streamingInfo.pusherKey, nowPlaying);
-			refreshSongs();
+			requestStatus();
 		}
 	}
 
+	/**
+	 * Display the status held by the status service when its push connection
+	 * is established and fetch the status from the server otherwise
+	 */
+	private void requestStatus() {
+		if (statusBinder == null) {
+			if (statusBound)
+				statusRequested = true;
+			else
+				refreshSongs();
+			return;
+		}
+
+		StatusService.PublishedStatus published = statusBinder.getStatus();
+		if (published != null && statusBinder.isConnected()) {
+			Log.d(TAG, "Using status from " + published.getAge() + "ms ago");
+			StatusUpdate status = published.update;
+			setFresh();
+			nowPlaying = status.playing;
+			updateSongs(status.playing, status.queued, published.version);
+		} else
+			refreshSongs();
+	}
+
 	private void setMenuItemsEnabled(final boolean enabled) {
 		if (playItem != null)
 			playItem.setEnabled(enabled && hasStreamingInfo());
@@ -298,26 +340,83 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 	}
 
 	public void onUpdate(final Song playing, final Song[] queued) {
+		StatusSnapshot.get(getApplicationContext()).save(
+				new StatusUpdate(playing, queued));
 		runOnUiThread(new Runnable() {
 
 			public void run() {
+				setFresh();
 				nowPlaying = playing;
-				updateSongs(playing, queued);
+				updateSongs(playing, queued, -1);
 			}
 		});
 	}
 
+	/**
+	 * Display the last saved status as stale until a current status arrives
+	 */
+	private void loadSnapshot() {
+		final Context context = getApplicationContext();
+		new AsyncTask<Void, Void, Saved>() {
+
+			@Override
+			protected Saved doInBackground(Void... params) {
+				return StatusSnapshot.get(context).read();
+			}
+
+			@Override
+			protected void onPostExecute(Saved result) {
+				if (result == null || hasStatus)
+					return;
+
+				nowPlaying = result.update.playing;
+				updateSongs(result.update.playing, result.update.queued, -1);
+				getSupportActionBar().setSubtitle(
+						MessageFormat.format(getString(string.status_stale),
+								DateUtils.getRelativeTimeSpanString(
+										result.savedAt,
+										System.currentTimeMillis(),
+										DateUtils.MINUTE_IN_MILLIS)));
+			}
+		}.execute();
+	}
+
+	/**
+	 * Mark the displayed status as current
+	 */
+	private void setFresh() {
+		if (!hasStatus) {
+			hasStatus = true;
+			getSupportActionBar().setSubtitle(null);
+		}
+	}
+
+	/**
+	 * Update views for a delta already applied to the list adapter
+	 *
+	 * @param delta
+	 */
+	private void onDelta(final QueueDelta delta) {
+		Song playing = delta.playing;
+		Song[] queued = playListAdapter.getSongs();
+		nowPlaying = playing;
+		queueEmpty = playing == null && queued.length == 0;
+		playListAdapter.updatePlaying(nowPlayingView, playing);
+		showLoading(false);
+	}
+
 	private void showLoading(final boolean loading) {
 		ViewUtils.setGone(loadingView, !loading);
 		ViewUtils.setGone(nowPlayingView, loading);
 		ViewUtils.setGone(listView, loading);
 	}
 
-	private void updateSongs(final Song playing, final Song[] queued) {
+	private void updateSongs(final Song playing, final Song[] queued,
+			final long version) {
 		queueEmpty = playing == null && (queued == null || queued.length == 0);
 
 		playListAdapter.updatePlaying(nowPlayingView, playing);
-		playListAdapter.setItems(queued);
+		playListAdapter.setSongs(queued, version);
 
 		showLoading(false);
 	}
@@ -370,6 +469,9 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		case id.m_play_stars:
 			playStars();
 			return true;
+		case id.m_debug:
+			startActivity(new Intent(this, DebugActivity.class));
+			return true;
 		default:
 			return super.onOptionsItemSelected(item);
 		}
@@ -386,6 +488,8 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 		refreshItem = optionsMenu.findItem(id.m_refresh);
 		searchItem = optionsMenu.findItem(id.m_search);
 		playStarsItem = optionsMenu.findItem(id.m_play_stars);
+		optionsMenu.findItem(id.m_debug).setVisible(
+				DebugActivity.isEnabled(this));
 
 		if (isReady())
 			setMenuItemsEnabled(true);
@@ -409,6 +513,7 @@ public class PlayActivity extends SherlockActivity implements SongCallback,
 			if (hasSettings()) {
 				playService.set(new PlayService(settings.getUrl(), settings
 						.getToken()));
+				StatusSnapshot.get(getApplicationContext()).clear();
 				streamingInfo = null;
 				load();
 			}
@@ -19,12 +19,20 @@ import static android.content.Intent.ACTION_VIEW;
 import static android.content.Intent.FLAG_ACTIVITY_CLEAR_TOP;
 import static android.content.Intent.FLAG_ACTIVITY_SINGLE_TOP;
 import static android.graphics.Paint.UNDERLINE_TEXT_FLAG;
+import static android.os.Environment.DIRECTORY_DOWNLOADS;
+import static android.os.Environment.MEDIA_MOUNTED;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Environment;
 import android.text.TextUtils;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.EditText;
 import android.widget.TextView;
 
@@ -40,7 +48,10 @@ import com.github.play.R.layout;
 import com.github.play.R.menu;
 import com.github.play.R.string;
 import com.github.play.core.PlayPreferences;
+import com.github.play.widget.SongArtWrapper;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -53,6 +64,12 @@ public class SettingsActivity extends SherlockActivity {
 
 	private static final String PREFIX_HTTPS = "https://";
 
+	/**
+	 * Name of art pack file in the downloads directory that is exported to
+	 * and imported from
+	 */
+	private static final String ART_PACK = "play-art.pack";
+
 	private PlayPreferences settings;
 
 	private EditText tokenText;
@@ -110,6 +127,17 @@ public class SettingsActivity extends SherlockActivity {
 			}
 		});
 
+		CheckBox flattenBox = finder.find(id.cb_flatten_art);
+		flattenBox.setChecked(settings.isArtFlattened());
+		flattenBox.setOnCheckedChangeListener(new OnCheckedChangeListener() {
+
+			public void onCheckedChanged(CompoundButton buttonView,
+					boolean isChecked) {
+				settings.setArtFlattened(isChecked);
+				SongArtWrapper.setFlattened(isChecked);
+			}
+		});
+
 		EditTextUtils.onDone(tokenText, new BooleanRunnable() {
 
 			public boolean run() {
@@ -126,6 +154,67 @@ public class SettingsActivity extends SherlockActivity {
 		return true;
 	}
 
+	/**
+	 * Get art pack file in the public downloads directory where it can be
+	 * copied to and from with a computer or a file manager
+	 *
+	 * @return file
+	 */
+	private static File getArtPackFile() {
+		return new File(
+				Environment.getExternalStoragePublicDirectory(DIRECTORY_DOWNLOADS),
+				ART_PACK);
+	}
+
+	/**
+	 * Export the art cache to an art pack in the downloads directory or import
+	 * the art pack from the downloads directory
+	 *
+	 * @param export
+	 */
+	private void transferArtPack(final boolean export) {
+		final Context context = getApplicationContext();
+		final File file = getArtPackFile();
+		new AsyncTask<Void, Void, Integer>() {
+
+			private IOException error;
+
+			@Override
+			protected Integer doInBackground(Void... params) {
+				try {
+					if (!MEDIA_MOUNTED.equals(Environment
+							.getExternalStorageState()))
+						throw new IOException("External storage unavailable");
+
+					if (export) {
+						File directory = file.getParentFile();
+						if (!directory.isDirectory() && !directory.mkdirs())
+							throw new IOException("Unable to create "
+									+ directory);
+						return SongArtWrapper.exportPack(context, file);
+					} else
+						return SongArtWrapper.importPack(context, file);
+				} catch (IOException e) {
+					error = e;
+					return null;
+				}
+			}
+
+			@Override
+			protected void onPostExecute(Integer result) {
+				if (error != null)
+					Toaster.showLong(SettingsActivity.this,
+							string.art_pack_failed, error.getMessage());
+				else if (export)
+					Toaster.showLong(SettingsActivity.this,
+							string.art_pack_exported, result, file);
+				else
+					Toaster.showLong(SettingsActivity.this,
+							string.art_pack_imported, result, file);
+			}
+		}.execute();
+	}
+
 	private void saveSettings() {
 		String token = tokenText.getText().toString().trim();
 		if (TextUtils.isEmpty(token))
@@ -165,6 +254,12 @@ public class SettingsActivity extends SherlockActivity {
 		case id.m_save:
 			saveSettings();
 			return true;
+		case id.m_export_art_pack:
+			transferArtPack(true);
+			return true;
+		case id.m_import_art_pack:
+			transferArtPack(false);
+			return true;
 		default:
 			return super.onOptionsItemSelected(item);
 		}
@@ -17,7 +17,6 @@ package com.github.play.app;
 
 import static android.content.Intent.FLAG_ACTIVITY_CLEAR_TOP;
 import static android.content.Intent.FLAG_ACTIVITY_SINGLE_TOP;
-import static com.github.play.app.PlayActivity.ACTION_QUEUE;
 import android.content.Intent;
 import android.graphics.drawable.AnimationDrawable;
 import android.os.Bundle;
@@ -44,7 +43,10 @@ import com.github.play.core.PlayService;
 import com.github.play.core.QueueSongsTask;
 import com.github.play.core.Song;
 import com.github.play.core.SongResult;
+import com.github.play.core.StatusBus;
+import com.github.play.widget.KnownSongs;
 import com.github.play.widget.SearchListAdapter;
+import com.github.play.widget.SongArtWrapper;
 
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -134,6 +136,7 @@ public abstract class SongViewActivity extends SherlockActivity implements
 		listView = finder.find(android.R.id.list);
 		listView.setOnItemClickListener(this);
 		adapter = new SearchListAdapter(this, service);
+		listView.setOnScrollListener(adapter.getScrollListener());
 		listView.setAdapter(adapter);
 
 		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
@@ -144,6 +147,13 @@ public abstract class SongViewActivity extends SherlockActivity implements
 		refreshSongs();
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		SongArtWrapper.cancel(this);
+	}
+
 	/**
 	 * Show/hide loading view
 	 *
@@ -165,9 +175,10 @@ public abstract class SongViewActivity extends SherlockActivity implements
 	 * @param result
 	 */
 	protected void displaySongs(final SongResult result) {
-		if (result.exception == null)
+		if (result.exception == null) {
 			adapter.setSongs(result);
-		else {
+			KnownSongs.get(getApplicationContext()).add(result.songs);
+		} else {
 			Log.d(TAG, "Searching songs failed", result.exception);
 			Toaster.showLong(SongViewActivity.this, string.search_failed);
 		}
@@ -260,7 +271,7 @@ public abstract class SongViewActivity extends SherlockActivity implements
 					Toaster.showLong(SongViewActivity.this,
 							string.queueing_failed);
 				else {
-					sendBroadcast(new Intent(ACTION_QUEUE));
+					StatusBus.publishQueueChanged();
 					setResult(RESULT_OK);
 					finish();
 				}
@@ -20,6 +20,8 @@ import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
 import static android.os.Build.VERSION.SDK_INT;
 import static android.os.Build.VERSION_CODES.HONEYCOMB;
 import static android.os.Build.VERSION_CODES.JELLY_BEAN;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import android.app.Notification;
 import android.app.Notification.BigTextStyle;
 import android.app.Notification.Builder;
@@ -28,24 +30,50 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
+import android.graphics.Bitmap;
+import android.os.Binder;
+import android.os.Debug;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.emorym.android_pusher.Pusher;
 import com.emorym.android_pusher.PusherCallback;
 import com.github.play.R.drawable;
+import com.github.play.core.EventTrace;
+import com.github.play.core.EventTrace.Event;
+import com.github.play.core.FetchStatusTask;
+import com.github.play.core.PlayPreferences;
+import com.github.play.core.PlayService;
+import com.github.play.core.PusherSupervisor;
+import com.github.play.core.QueueDelta;
 import com.github.play.core.Song;
+import com.github.play.core.SongCallback;
 import com.github.play.core.SongPusher;
+import com.github.play.core.StatusBus;
+import com.github.play.core.StatusEventDecoder;
+import com.github.play.core.StatusSnapshot;
+import com.github.play.core.StatusStats;
 import com.github.play.core.StatusUpdate;
+import com.github.play.core.TimingStats;
+import com.github.play.widget.ArtPrefetcher;
 import com.github.play.widget.SongArtWrapper;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
@@ -54,16 +82,6 @@ import org.json.JSONObject;
  */
 public class StatusService extends Service {
 
-	/**
-	 * Action to use for broadcasting updates
-	 */
-	public static final String UPDATE = "com.github.play.action.STATUS_UPDATE";
-
-	/**
-	 * Intent extra key to a {@link StatusUpdate} handle
-	 */
-	public static final String EXTRA_UPDATE = "update";
-
 	/**
 	 * Start service with application key
 	 *
@@ -97,6 +115,48 @@ public class StatusService extends Service {
 		context.startService(intent);
 	}
 
+	/**
+	 * Bind to the service if it is running or once it is started
+	 *
+	 * @param context
+	 * @param connection
+	 * @return true if binding, false otherwise
+	 */
+	public static boolean bind(final Context context,
+			final ServiceConnection connection) {
+		return context.bindService(new Intent(ACTION), connection, 0);
+	}
+
+	/**
+	 * Replay events recorded to a trace through the event pipeline
+	 * <p>
+	 * Replayed statuses are decoded and diffed like live statuses but are
+	 * never published, saved or notified, and are counted separately from
+	 * live statuses
+	 *
+	 * @param context
+	 * @param trace
+	 * @param realtime
+	 *            true to replay at the recorded speed, false to replay as
+	 *            fast as possible
+	 */
+	public static void replay(final Context context, final File trace,
+			final boolean realtime) {
+		Intent intent = new Intent(ACTION);
+		intent.putExtra(EXTRA_REPLAY, trace.getAbsolutePath());
+		intent.putExtra(EXTRA_REALTIME, realtime);
+		context.startService(intent);
+	}
+
+	/**
+	 * Get report of the last completed replay
+	 *
+	 * @return report or null if no replay completed
+	 */
+	public static String getReplayReport() {
+		return replayReport;
+	}
+
 	/**
 	 * Start service with application key
 	 *
@@ -117,62 +177,253 @@ public class StatusService extends Service {
 
 	private static final String EXTRA_SONG = "song";
 
+	private static final String EXTRA_REPLAY = "replay";
+
+	private static final String EXTRA_REALTIME = "realtime";
+
 	private static final String TAG = "StatusService";
 
-	private static Song parseSong(final JSONObject object) {
-		String id = object.optString("id");
-		if (id == null)
-			id = "";
+	/**
+	 * Maximum number of events waiting for the pipeline thread
+	 */
+	private static final int PIPELINE_CAPACITY = 16;
+
+	/**
+	 * Report of the last completed replay
+	 */
+	private static volatile String replayReport;
+
+	/**
+	 * State of a replay in progress
+	 */
+	private static class Replay {
+
+		final boolean realtime;
+
+		/**
+		 * Decoder used only on the pipeline thread so replayed songs are
+		 * never reused for live statuses
+		 */
+		final StatusEventDecoder decoder = new StatusEventDecoder();
+
+		final AtomicInteger decoded = new AtomicInteger();
+
+		final AtomicInteger deltas = new AtomicInteger();
 
-		String artist = object.optString("artist");
-		if (artist == null)
-			artist = "";
+		final AtomicInteger coalesced = new AtomicInteger();
 
-		String album = object.optString("album");
-		if (album == null)
-			album = "";
+		final AtomicInteger dropped = new AtomicInteger();
 
-		String name = object.optString("name");
-		if (name == null)
-			name = "";
+		final AtomicInteger invalid = new AtomicInteger();
 
-		return new Song(id, name, artist, album, object.optBoolean("starred"),
-				object.optDouble("duration"));
+		final TimingStats decode = new TimingStats(MICROSECONDS);
+
+		final TimingStats diff = new TimingStats(MICROSECONDS);
+
+		/**
+		 * Queue of the last decoded status, used only on the pipeline thread
+		 */
+		Song[] queue;
+
+		/**
+		 * Number of events in the trace, set once it is loaded
+		 */
+		volatile int events;
+
+		/**
+		 * Time the first event was replayed in {@link System#nanoTime()}
+		 * units
+		 */
+		volatile long start;
+
+		/**
+		 * True once the replay was ended before its last event
+		 */
+		volatile boolean cancelled;
+
+		Replay(final boolean realtime) {
+			this.realtime = realtime;
+		}
+	}
+
+	/**
+	 * Status waiting to be processed by the pipeline thread
+	 * <p>
+	 * A status without an event or update marks the end of a replay
+	 */
+	private static class PendingStatus {
+
+		/**
+		 * Event to decode or null if {@link #recorded} or {@link #update} is
+		 * set
+		 */
+		final JSONObject event;
+
+		/**
+		 * Recorded event to decode by streaming it or null if
+		 * {@link #event} or {@link #update} is set
+		 */
+		final String recorded;
+
+		final StatusUpdate update;
+
+		/**
+		 * Time the status was received in {@link System#nanoTime()} units
+		 */
+		final long start;
+
+		/**
+		 * Replay the status belongs to or null if live
+		 */
+		final Replay replay;
+
+		PendingStatus(final JSONObject event, final String recorded,
+				final StatusUpdate update, final long start,
+				final Replay replay) {
+			this.event = event;
+			this.recorded = recorded;
+			this.update = update;
+			this.start = start;
+			this.replay = replay;
+		}
+
+		/**
+		 * Does this status mark the end of a replay?
+		 *
+		 * @return true if marker, false otherwise
+		 */
+		boolean isMarker() {
+			return event == null && recorded == null && update == null;
+		}
 	}
 
 	private final Executor backgroundThread = Executors.newFixedThreadPool(1);
 
-	private final PusherCallback callback = new PusherCallback() {
+	/**
+	 * Decoder used only on the pipeline thread
+	 */
+	private final StatusEventDecoder decoder = new StatusEventDecoder();
 
-		public void onEvent(JSONObject eventData) {
-			JSONObject nowPlaying = eventData.optJSONObject("now_playing");
-			if (nowPlaying == null)
-				return;
+	private final Handler handler = new Handler();
 
-			JSONArray upcomingSongs = eventData.optJSONArray("songs");
-			if (upcomingSongs == null)
-				return;
+	private final BlockingQueue<PendingStatus> pipeline = new ArrayBlockingQueue<PendingStatus>(
+			PIPELINE_CAPACITY);
 
-			Song playing = parseSong(nowPlaying);
+	/**
+	 * Thread that decodes, diffs and publishes statuses so the main thread
+	 * only receives events and updates the notification
+	 */
+	private final Thread pipelineThread = new Thread("StatusPipeline") {
 
-			List<Song> parsedSongs = new ArrayList<Song>(upcomingSongs.length());
-			for (int i = 0; i < upcomingSongs.length(); i++) {
-				JSONObject song = upcomingSongs.optJSONObject(i);
-				if (song == null)
-					continue;
-				parsedSongs.add(parseSong(song));
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted())
+					process(pipeline.take());
+			} catch (InterruptedException e) {
+				// Service destroyed
 			}
-			Song[] queued = parsedSongs.toArray(new Song[parsedSongs.size()]);
+		}
+	};
+
+	/**
+	 * Coalescer of bursts of events into the newest event of the burst
+	 * <p>
+	 * All methods must be called from the main thread
+	 */
+	private class Coalescer implements Runnable {
+
+		private final Replay replay;
+
+		/**
+		 * Newest status not processed yet
+		 */
+		private PendingStatus pending;
 
-			Intent intent = new Intent(UPDATE);
-			intent.putExtra(EXTRA_UPDATE, new StatusUpdate(playing, queued));
-			sendBroadcast(intent);
+		/**
+		 * Time the first event of the pending burst was received
+		 */
+		private long pendingStart;
 
-			updateNotification(playing);
+		/**
+		 * Create coalescer
+		 *
+		 * @param replay
+		 *            events belong to or null if live
+		 */
+		Coalescer(final Replay replay) {
+			this.replay = replay;
+		}
+
+		/**
+		 * Add status of a received event
+		 *
+		 * @param status
+		 */
+		void add(final PendingStatus status) {
+			// Read for each event so changes apply without reconnecting
+			int coalesceWindow = settings.getCoalesceWindow();
+			if (coalesceWindow <= 0) {
+				enqueue(status);
+				return;
+			}
+
+			if (pending == null) {
+				pendingStart = status.start;
+				handler.postDelayed(this, coalesceWindow);
+			} else if (replay != null)
+				replay.coalesced.incrementAndGet();
+			else
+				StatusStats.COALESCED.incrementAndGet();
+			pending = status;
+		}
+
+		/**
+		 * Process the pending event now instead of at the end of the window
+		 */
+		void flush() {
+			handler.removeCallbacks(this);
+			run();
+		}
+
+		/**
+		 * Process the newest event received during the coalescing window
+		 */
+		public void run() {
+			PendingStatus status = pending;
+			pending = null;
+			if (status != null)
+				enqueue(new PendingStatus(status.event, status.recorded, null,
+						pendingStart, replay));
+		}
+	}
+
+	private final Coalescer coalescer = new Coalescer(null);
+
+	private final PusherCallback callback = new PusherCallback() {
+
+		public void onEvent(JSONObject eventData) {
+			long start = System.nanoTime();
+			EventTrace.record(eventData);
+			coalescer.add(new PendingStatus(eventData, null, null, start,
+					null));
 		}
 	};
 
-	private Pusher pusher;
+	private PlayPreferences settings;
+
+	private Replay replay;
+
+	/**
+	 * True once destroyed so work posted by other threads is ignored
+	 */
+	private volatile boolean destroyed;
+
+	private final AtomicReference<PlayService> playService = new AtomicReference<PlayService>();
+
+	private ArtPrefetcher prefetcher;
+
+	private PusherSupervisor supervisor;
 
 	private String applicationKey;
 
@@ -180,9 +431,113 @@ public class StatusService extends Service {
 
 	private boolean notificationSent;
 
+	private Song notificationSong;
+
+	/**
+	 * Version of the last published status, seeded with the creation time so
+	 * versions of a restarted service don't match a previous one
+	 * <p>
+	 * This is only used on the pipeline thread
+	 */
+	private long version = System.currentTimeMillis();
+
+	/**
+	 * Last published status, replaced as a whole on the pipeline thread
+	 */
+	private volatile PublishedStatus published;
+
+	/**
+	 * Status published by the service along with its version and the time it
+	 * was published
+	 */
+	public static class PublishedStatus {
+
+		/**
+		 * Published status
+		 */
+		public final StatusUpdate update;
+
+		/**
+		 * Version of the published status
+		 */
+		public final long version;
+
+		/**
+		 * Time the status was published in
+		 * {@link SystemClock#elapsedRealtime()} units
+		 */
+		public final long time;
+
+		PublishedStatus(final StatusUpdate update, final long version,
+				final long time) {
+			this.update = update;
+			this.version = version;
+			this.time = time;
+		}
+
+		/**
+		 * Get time since the status was published
+		 *
+		 * @return age in milliseconds
+		 */
+		public long getAge() {
+			return SystemClock.elapsedRealtime() - time;
+		}
+	}
+
+	/**
+	 * Binder to the service for clients in the same process
+	 * <p>
+	 * All methods must be called from the main thread
+	 */
+	public class LocalBinder extends Binder {
+
+		/**
+		 * Get last published status along with its version and publish time
+		 *
+		 * @return status or null if none published
+		 */
+		public PublishedStatus getStatus() {
+			return published;
+		}
+
+		/**
+		 * Is the push connection established so the last published status is
+		 * current?
+		 *
+		 * @return true if connected, false otherwise
+		 */
+		public boolean isConnected() {
+			return supervisor != null && supervisor.isConnected();
+		}
+
+		/**
+		 * Register listener to the {@link StatusBus}
+		 * <p>
+		 * Statuses published before registering are not delivered, use
+		 * {@link #getStatus()} for the current status
+		 *
+		 * @param listener
+		 */
+		public void addListener(final StatusBus.Listener listener) {
+			StatusBus.register(listener);
+		}
+
+		/**
+		 * Unregister listener from the {@link StatusBus}
+		 *
+		 * @param listener
+		 */
+		public void removeListener(final StatusBus.Listener listener) {
+			StatusBus.unregister(listener);
+		}
+	}
+
+	private final IBinder binder = new LocalBinder();
+
 	@Override
 	public IBinder onBind(final Intent intent) {
-		return null;
+		return binder;
 	}
 
 	@Override
@@ -191,7 +546,11 @@ public class StatusService extends Service {
 
 		Log.d(TAG, "Destroying status service");
 
-		destroyPusher(pusher);
+		destroyed = true;
+		destroyPusher();
+		handler.removeCallbacksAndMessages(null);
+		cancelReplay();
+		pipelineThread.interrupt();
 		stopForeground(true);
 	}
 
@@ -200,6 +559,10 @@ public class StatusService extends Service {
 		super.onCreate();
 
 		Log.d(TAG, "Creating status service");
+
+		settings = new PlayPreferences(this);
+		prefetcher = new ArtPrefetcher(getApplicationContext(), playService);
+		pipelineThread.start();
 	}
 
 	@Override
@@ -209,45 +572,427 @@ public class StatusService extends Service {
 			String intentKey = intent.getStringExtra(EXTRA_KEY);
 			if (!TextUtils.isEmpty(intentKey)
 					&& !intentKey.equals(applicationKey)) {
-				destroyPusher(pusher);
+				destroyPusher();
 				createPusher(intentKey);
 			}
 
 			boolean updateNotification = intent.hasExtra(EXTRA_NOTIFY);
 			if (updateNotification)
 				sendNotification = intent.getBooleanExtra(EXTRA_NOTIFY, false);
-			Song song = (Song) intent.getSerializableExtra(EXTRA_SONG);
+			Song song = intent.getParcelableExtra(EXTRA_SONG);
 			if (updateNotification && !sendNotification) {
 				clearNotification();
 			} else if (song != null)
 				updateNotification(song);
+
+			String trace = intent.getStringExtra(EXTRA_REPLAY);
+			if (trace != null)
+				loadReplay(new File(trace),
+						intent.getBooleanExtra(EXTRA_REALTIME, false));
 		}
 
 		return super.onStartCommand(intent, flags, startId);
 	}
 
-	private void destroyPusher(final Pusher pusher) {
-		if (pusher != null)
-			backgroundThread.execute(new Runnable() {
+	/**
+	 * Hand status to the pipeline thread, dropping the oldest waiting status
+	 * if the pipeline is full
+	 * <p>
+	 * Markers are never dropped
+	 *
+	 * @param status
+	 */
+	private void enqueue(final PendingStatus status) {
+		while (!destroyed && !pipeline.offer(status))
+			if (!dropOldest())
+				// Only markers are waiting and are about to be taken
+				Thread.yield();
+	}
+
+	/**
+	 * Drop the oldest waiting status that isn't a marker
+	 *
+	 * @return true if dropped, false if none waiting
+	 */
+	private boolean dropOldest() {
+		Iterator<PendingStatus> waiting = pipeline.iterator();
+		while (waiting.hasNext()) {
+			PendingStatus status = waiting.next();
+			if (status.isMarker())
+				continue;
+
+			waiting.remove();
+			if (status.replay != null)
+				status.replay.dropped.incrementAndGet();
+			else
+				StatusStats.DROPPED.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Hand status to the pipeline thread, waiting while the pipeline is full
+	 * <p>
+	 * This blocks and must not be called from the main thread
+	 *
+	 * @param status
+	 * @return true if handed over, false if the service was destroyed
+	 */
+	private boolean put(final PendingStatus status) {
+		try {
+			while (!destroyed)
+				if (pipeline.offer(status, 100, MILLISECONDS))
+					return true;
+		} catch (InterruptedException e) {
+			// Fall through
+		}
+		return false;
+	}
+
+	/**
+	 * Decode, diff and publish status and then update the notification on
+	 * the main thread
+	 * <p>
+	 * This is called on the pipeline thread
+	 *
+	 * @param status
+	 */
+	private void process(final PendingStatus status) {
+		final Replay replay = status.replay;
+		if (status.isMarker()) {
+			final int reused = replay.decoder.getReusedCount();
+			final int created = replay.decoder.getCreatedCount();
+			handler.post(new Runnable() {
 
 				public void run() {
-					pusher.disconnect();
+					finishReplay(replay, reused, created);
 				}
 			});
+			return;
+		}
+		if (replay != null) {
+			processReplayed(replay, status.recorded);
+			return;
+		}
+
+		StatusStats.RECEIVE.addSince(status.start);
+
+		StatusUpdate update = status.update;
+		if (update == null) {
+			long decodeStart = System.nanoTime();
+			update = decoder.decode(status.event);
+			StatusStats.DECODE.addSince(decodeStart);
+			if (update == null)
+				return;
+		}
+
+		long diffStart = System.nanoTime();
+		PublishedStatus previous = published;
+		Song[] base = previous != null ? previous.update.queued : null;
+		long baseVersion = this.version++;
+		long version = this.version;
+		published = new PublishedStatus(update, version,
+				SystemClock.elapsedRealtime());
+		QueueDelta delta = diff(baseVersion, base, version, update);
+		if (delta != null)
+			StatusStats.DELTAS.incrementAndGet();
+		StatusStats.DIFF.addSince(diffStart);
+
+		long publishStart = System.nanoTime();
+		StatusBus.publishStatus(update, version, delta, status.start);
+		StatusSnapshot.get(this).save(update);
+		StatusStats.PUBLISH.addSince(publishStart);
+
+		final StatusUpdate published = update;
+		handler.post(new Runnable() {
+
+			public void run() {
+				if (destroyed)
+					return;
+				long notifyStart = System.nanoTime();
+				notifyStatus(published);
+				StatusStats.NOTIFY.addSince(notifyStart);
+			}
+		});
 	}
 
-	private void createPusher(String applicationKey) {
-		this.applicationKey = applicationKey;
+	/**
+	 * Compute delta against the previously published queue
+	 * <p>
+	 * No delta is computed when there is no previous queue or when most of
+	 * the queue changed
+	 *
+	 * @param baseVersion
+	 * @param base
+	 * @param version
+	 * @param update
+	 * @return delta or null if not computed
+	 */
+	private QueueDelta diff(final long baseVersion, final Song[] base,
+			final long version, final StatusUpdate update) {
+		Song[] queued = update.queued;
+		if (base == null || queued == null)
+			return null;
 
-		final Pusher pusher = new SongPusher(applicationKey);
+		QueueDelta delta = QueueDelta.compute(baseVersion, base, version,
+				update.playing, queued);
+		if (delta.getInsertions() > queued.length / 2)
+			return null;
+		return delta;
+	}
+
+	/**
+	 * Decode and diff replayed event against the previously replayed status
+	 * <p>
+	 * This is called on the pipeline thread. Replayed statuses are streamed
+	 * from the recorded JSON, counted by the replay and never published.
+	 *
+	 * @param replay
+	 * @param event
+	 */
+	private void processReplayed(final Replay replay, final String event) {
+		if (replay.cancelled)
+			return;
+
+		long decodeStart = System.nanoTime();
+		StatusUpdate update;
+		try {
+			update = replay.decoder.decode(new StringReader(event));
+		} catch (IOException e) {
+			update = null;
+		} catch (NumberFormatException e) {
+			update = null;
+		}
+		replay.decode.addSince(decodeStart);
+		if (update == null) {
+			replay.invalid.incrementAndGet();
+			return;
+		}
+		replay.decoded.incrementAndGet();
+
+		long diffStart = System.nanoTime();
+		Song[] base = replay.queue;
+		replay.queue = update.queued;
+		if (diff(0, base, 1, update) != null)
+			replay.deltas.incrementAndGet();
+		replay.diff.addSince(diffStart);
+	}
+
+	/**
+	 * Prefetch art of status and update the notification if the playing song
+	 * changed
+	 *
+	 * @param update
+	 */
+	private void notifyStatus(final StatusUpdate update) {
+		prefetcher.prefetch(update.playing, update.queued);
+		if (update.playing == null)
+			return;
+		if (update.playing.equals(notificationSong))
+			StatusStats.NOTIFICATIONS_SKIPPED.incrementAndGet();
+		else
+			updateNotification(update.playing);
+	}
+
+	private void loadReplay(final File trace, final boolean realtime) {
+		if (replay != null)
+			return;
+
+		Log.d(TAG, "Loading events to replay from " + trace);
+		// Mark a replay in progress while loading
+		final Replay loading = new Replay(realtime);
+		replay = loading;
 		backgroundThread.execute(new Runnable() {
 
 			public void run() {
-				pusher.subscribe("now_playing_updates").bind(
-						"update_now_playing", callback);
+				try {
+					final List<Event> events = EventTrace.read(trace);
+					handler.post(new Runnable() {
+
+						public void run() {
+							if (replay == loading)
+								startReplay(loading, events);
+						}
+					});
+				} catch (IOException e) {
+					Log.d(TAG, "Reading events to replay failed", e);
+					replayReport = "Reading " + trace + " failed: "
+							+ e.getMessage();
+					handler.post(new Runnable() {
+
+						public void run() {
+							if (replay == loading)
+								replay = null;
+						}
+					});
+				}
 			}
 		});
-		this.pusher = pusher;
+	}
+
+	/**
+	 * Feed events to the pipeline
+	 * <p>
+	 * Events replayed at recorded speed are coalesced like live events,
+	 * events replayed at full speed are handed to the pipeline as fast as
+	 * it decodes them from a separate thread without coalescing or dropping
+	 * any. Allocations are counted for the whole process until the last
+	 * event passed through the pipeline.
+	 *
+	 * @param replay
+	 * @param events
+	 */
+	@SuppressWarnings("deprecation")
+	private void startReplay(final Replay replay, final List<Event> events) {
+		Debug.resetGlobalAllocCount();
+		Debug.resetGlobalAllocSize();
+		Debug.startAllocCounting();
+		replay.events = events.size();
+		replay.start = System.nanoTime();
+
+		if (replay.realtime) {
+			final Coalescer coalescer = new Coalescer(replay);
+			long base = SystemClock.uptimeMillis();
+			for (final Event event : events)
+				handler.postAtTime(new Runnable() {
+
+					public void run() {
+						coalescer.add(new PendingStatus(null, event.json, null,
+								System.nanoTime(), replay));
+					}
+				}, base + event.time);
+			long end = events.isEmpty() ? base : base
+					+ events.get(events.size() - 1).time;
+			handler.postAtTime(new Runnable() {
+
+				public void run() {
+					coalescer.flush();
+					enqueue(new PendingStatus(null, null, null, System
+							.nanoTime(), replay));
+				}
+			}, end);
+		} else
+			new Thread("StatusReplay") {
+
+				@Override
+				public void run() {
+					for (Event event : events) {
+						if (replay.cancelled)
+							return;
+						if (!put(new PendingStatus(null, event.json, null,
+								System.nanoTime(), replay)))
+							return;
+					}
+					put(new PendingStatus(null, null, null, System.nanoTime(),
+							replay));
+				}
+			}.start();
+	}
+
+	/**
+	 * End the replay in progress before its last event
+	 */
+	@SuppressWarnings("deprecation")
+	private void cancelReplay() {
+		Replay replay = this.replay;
+		if (replay == null)
+			return;
+
+		this.replay = null;
+		replay.cancelled = true;
+		if (replay.start != 0)
+			Debug.stopAllocCounting();
+	}
+
+	@SuppressWarnings("deprecation")
+	private void finishReplay(final Replay replay, final int reused,
+			final int created) {
+		if (replay != this.replay)
+			return;
+		this.replay = null;
+
+		long duration = Math.max(1,
+				(System.nanoTime() - replay.start) / 1000000);
+		Debug.stopAllocCounting();
+		int decoded = replay.decoded.get();
+		StringBuilder report = new StringBuilder();
+		report.append(replay.events).append(" events ")
+				.append(replay.realtime ? "at recorded speed" : "at full speed")
+				.append(" in ").append(duration).append("ms\n");
+		report.append(decoded).append(" decoded, ")
+				.append(decoded * 1000L / duration).append(" decoded/s, ")
+				.append(replay.deltas.get()).append(" deltas\n");
+		report.append(replay.coalesced.get()).append(" coalesced, ")
+				.append(replay.dropped.get()).append(" dropped, ")
+				.append(replay.invalid.get()).append(" invalid\n");
+		report.append("Songs: ").append(reused).append(" reused, ")
+				.append(created).append(" created\n");
+		report.append("Decode: ").append(replay.decode).append('\n');
+		report.append("Diff: ").append(replay.diff).append('\n');
+		report.append(Debug.getGlobalAllocCount()).append(" allocations, ")
+				.append(Debug.getGlobalAllocSize() / 1024).append(" KB");
+		replayReport = report.toString();
+		Log.d(TAG, "Replayed " + replayReport);
+	}
+
+	private void destroyPusher() {
+		if (supervisor != null) {
+			supervisor.stop();
+			supervisor = null;
+		}
+	}
+
+	private void createPusher(final String applicationKey) {
+		this.applicationKey = applicationKey;
+
+		if (settings.getUrl() != null && settings.getToken() != null)
+			playService.set(new PlayService(settings.getUrl(), settings
+					.getToken()));
+
+		supervisor = new PusherSupervisor(backgroundThread,
+				new PusherSupervisor.Connection() {
+
+					public Pusher connect() {
+						final Pusher pusher = new SongPusher(applicationKey);
+						backgroundThread.execute(new Runnable() {
+
+							public void run() {
+								pusher.subscribe("now_playing_updates").bind(
+										"update_now_playing", callback);
+							}
+						});
+						return pusher;
+					}
+
+					public void onReconnected() {
+						resync();
+					}
+				});
+		supervisor.start();
+	}
+
+	/**
+	 * Request the current status to replace events missed while disconnected
+	 */
+	private void resync() {
+		if (playService.get() == null)
+			return;
+
+		StatusStats.RESYNCS.incrementAndGet();
+		final long start = System.nanoTime();
+		new FetchStatusTask(playService, new SongCallback() {
+
+			public void onUpdate(Song playing, Song[] queued) {
+				if (supervisor != null)
+					enqueue(new PendingStatus(null, null, new StatusUpdate(
+							playing, queued), start, null));
+			}
+
+			public void onError(IOException e) {
+				Log.d(TAG, "Resync failed", e);
+			}
+		}).execute();
 	}
 
 	private CharSequence getTickerText(final Song song) {
@@ -267,13 +1012,13 @@ public class StatusService extends Service {
 	}
 
 	private Notification createBigNotification(final Context context,
-			final Song song, final PendingIntent intent) {
+			final Song song, final Bitmap art, final PendingIntent intent) {
 		Builder builder = new Builder(context);
 		builder.setOngoing(true);
 		builder.setSmallIcon(drawable.notification);
 		builder.setTicker(getTickerText(song));
 		builder.setContentTitle(song.artist);
-		builder.setLargeIcon(SongArtWrapper.getCachedArt(context, song));
+		builder.setLargeIcon(art);
 		CharSequence contextText = getContentText(song);
 		builder.setContentText(contextText);
 		builder.setContentIntent(intent);
@@ -282,13 +1027,13 @@ public class StatusService extends Service {
 
 	@SuppressWarnings("deprecation")
 	private Notification createNotification(final Context context,
-			final Song song, final PendingIntent intent) {
+			final Song song, final Bitmap art, final PendingIntent intent) {
 		Notification notification = new Notification();
 		notification.icon = drawable.notification;
 		notification.flags |= FLAG_ONGOING_EVENT;
 		notification.tickerText = getTickerText(song);
 		if (SDK_INT >= HONEYCOMB)
-			notification.largeIcon = SongArtWrapper.getCachedArt(context, song);
+			notification.largeIcon = art;
 		notification.setLatestEventInfo(context, song.artist,
 				getContentText(song), intent);
 		return notification;
@@ -305,19 +1050,30 @@ public class StatusService extends Service {
 		}
 	}
 
-	private void updateNotification(Song song) {
+	private void updateNotification(final Song song) {
+		notificationSong = song;
 		if (!sendNotification)
 			return;
 
+		Bitmap art = SongArtWrapper.getNotificationArt(song);
+		if (art == null)
+			prefetcher.prefetchNotificationArt(song, new Runnable() {
+
+				public void run() {
+					if (!destroyed && song.equals(notificationSong))
+						updateNotification(notificationSong);
+				}
+			});
+
 		Context context = getApplicationContext();
 		PendingIntent intent = PendingIntent.getActivity(context, 0,
 				new Intent(context, PlayActivity.class), FLAG_UPDATE_CURRENT);
 
 		Notification notification;
 		if (SDK_INT >= JELLY_BEAN)
-			notification = createBigNotification(context, song, intent);
+			notification = createBigNotification(context, song, art, intent);
 		else
-			notification = createNotification(context, song, intent);
+			notification = createNotification(context, song, art, intent);
 
 		if (notificationSent)
 			getNotificationManager().notify(1, notification);
@@ -52,7 +52,7 @@ public class ViewAlbumActivity extends SongViewActivity {
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
-		song = (Song) getIntent().getSerializableExtra(EXTRA_SONG);
+		song = getIntent().getParcelableExtra(EXTRA_SONG);
 		getSupportActionBar().setSubtitle(song.album);
 
 		super.onCreate(savedInstanceState);
@@ -52,7 +52,7 @@ public class ViewArtistActivity extends SongViewActivity {
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
-		song = (Song) getIntent().getSerializableExtra(EXTRA_SONG);
+		song = getIntent().getParcelableExtra(EXTRA_SONG);
 		getSupportActionBar().setSubtitle(song.artist);
 
 		super.onCreate(savedInstanceState);
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Validators of a downloaded album art image used to revalidate it with
+ * conditional requests
+ */
+public class ArtMetadata {
+
+	/**
+	 * Result of revalidating art
+	 */
+	public static enum Status {
+
+		/**
+		 * Art has not changed on the server
+		 */
+		NOT_MODIFIED,
+
+		/**
+		 * Art changed on the server and was downloaded again
+		 */
+		MODIFIED,
+
+		/**
+		 * Art no longer exists on the server
+		 */
+		MISSING
+	}
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Read metadata from given file
+	 *
+	 * @param file
+	 * @return metadata or null if the file doesn't exist or can't be read
+	 */
+	public static ArtMetadata read(final File file) {
+		if (!file.isFile())
+			return null;
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(file));
+			if (input.readInt() != VERSION)
+				return null;
+			ArtMetadata metadata = new ArtMetadata();
+			String etag = input.readUTF();
+			metadata.etag = etag.length() > 0 ? etag : null;
+			metadata.lastModified = input.readLong();
+			metadata.fetchedAt = input.readLong();
+			return metadata;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+
+	/**
+	 * ETag of the image, null if the server didn't send one
+	 */
+	public String etag;
+
+	/**
+	 * Last modified time of the image, 0 if the server didn't send one
+	 */
+	public long lastModified;
+
+	/**
+	 * Time the image was last downloaded or revalidated
+	 */
+	public long fetchedAt;
+
+	/**
+	 * Write metadata to given file
+	 *
+	 * @param file
+	 * @return true if written, false if writing failed
+	 */
+	public boolean write(final File file) {
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new FileOutputStream(file));
+			output.writeInt(VERSION);
+			output.writeUTF(etag != null ? etag : "");
+			output.writeLong(lastModified);
+			output.writeLong(fetchedAt);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (output != null)
+				try {
+					output.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of in-memory caches that are trimmed when the system reports
+ * memory pressure
+ * <p>
+ * Trim levels are the {@code TRIM_MEMORY_*} constants of
+ * {@link android.content.ComponentCallbacks2}, low memory is reported as
+ * {@link android.content.ComponentCallbacks2#TRIM_MEMORY_COMPLETE}
+ */
+public class CacheRegistry {
+
+	/**
+	 * Cache that can release memory
+	 */
+	public interface Cache {
+
+		/**
+		 * Release memory appropriate for the given trim level
+		 *
+		 * @param level
+		 */
+		void trim(int level);
+	}
+
+	private static final String TAG = "CacheRegistry";
+
+	private static final List<Cache> CACHES = new CopyOnWriteArrayList<Cache>();
+
+	/**
+	 * Register cache to be trimmed
+	 *
+	 * @param cache
+	 */
+	public static void register(final Cache cache) {
+		CACHES.add(cache);
+	}
+
+	/**
+	 * Trim all registered caches for the given level
+	 *
+	 * @param level
+	 */
+	public static void trim(final int level) {
+		Log.d(TAG, "Trimming " + CACHES.size() + " caches at level " + level);
+		for (Cache cache : CACHES)
+			cache.trim(level);
+	}
+
+	/**
+	 * Trim all registered caches as much as possible
+	 */
+	public static void onLowMemory() {
+		trim(TRIM_MEMORY_COMPLETE);
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import static com.github.kevinsawicki.http.HttpRequest.CHARSET_UTF8;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONObject;
+
+/**
+ * Trace of pusher status events recorded to a file
+ * <p>
+ * Each line of a trace is the time in milliseconds since recording started,
+ * a tab and the JSON of the event. The pusher library only provides parsed
+ * events so the JSON is re-serialized from the parsed event.
+ */
+public class EventTrace {
+
+	/**
+	 * Recorded event
+	 */
+	public static class Event {
+
+		/**
+		 * Time in milliseconds since recording started
+		 */
+		public final long time;
+
+		/**
+		 * JSON of the event
+		 */
+		public final String json;
+
+		private Event(final long time, final String json) {
+			this.time = time;
+			this.json = json;
+		}
+	}
+
+	private static final String TAG = "EventTrace";
+
+	private static final ExecutorService WRITER = Executors
+			.newSingleThreadExecutor();
+
+	private static Writer writer;
+
+	private static long recordingStart;
+
+	/**
+	 * Is recording in progress?
+	 *
+	 * @return true if recording, false otherwise
+	 */
+	public static synchronized boolean isRecording() {
+		return writer != null;
+	}
+
+	/**
+	 * Start recording events to the file, replacing any previous trace
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public static synchronized void startRecording(final File file)
+			throws IOException {
+		stopRecording();
+
+		writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), CHARSET_UTF8));
+		recordingStart = SystemClock.elapsedRealtime();
+	}
+
+	/**
+	 * Stop recording and close the trace in the background
+	 */
+	public static synchronized void stopRecording() {
+		final Writer writer = EventTrace.writer;
+		EventTrace.writer = null;
+		if (writer != null)
+			WRITER.execute(new Runnable() {
+
+				public void run() {
+					try {
+						writer.close();
+					} catch (IOException e) {
+						Log.d(TAG, "Closing trace failed", e);
+					}
+				}
+			});
+	}
+
+	/**
+	 * Record event if recording is in progress
+	 * <p>
+	 * The event is written in the background
+	 *
+	 * @param event
+	 */
+	public static synchronized void record(final JSONObject event) {
+		final Writer writer = EventTrace.writer;
+		if (writer == null)
+			return;
+
+		final long time = SystemClock.elapsedRealtime() - recordingStart;
+		final String json = event.toString();
+		WRITER.execute(new Runnable() {
+
+			public void run() {
+				try {
+					writer.write(Long.toString(time));
+					writer.write('\t');
+					writer.write(json);
+					writer.write('\n');
+				} catch (IOException e) {
+					Log.d(TAG, "Recording event failed", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Read events from a trace
+	 * <p>
+	 * This reads from disk and should not be called from the main thread
+	 *
+	 * @param file
+	 * @return events in recorded order
+	 * @throws IOException
+	 */
+	public static List<Event> read(final File file) throws IOException {
+		List<Event> events = new ArrayList<Event>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), CHARSET_UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab == -1)
+					continue;
+				try {
+					events.add(new Event(Long.parseLong(line.substring(0, tab)),
+							line.substring(tab + 1)));
+				} catch (NumberFormatException e) {
+					Log.d(TAG, "Skipping malformed trace line", e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return events;
+	}
+}
@@ -32,6 +32,15 @@ public class PlayPreferences {
 
 	private static final String TOKEN = "token";
 
+	private static final String FLATTEN_ART = "flattenArt";
+
+	private static final String COALESCE_WINDOW = "coalesceWindow";
+
+	/**
+	 * Default time in milliseconds that status events are coalesced over
+	 */
+	public static final int DEFAULT_COALESCE_WINDOW = 300;
+
 	private SharedPreferences preferences;
 
 	/**
@@ -113,4 +122,47 @@ public class PlayPreferences {
 	public PlayPreferences setToken(final String token) {
 		return set(TOKEN, token);
 	}
+
+	/**
+	 * Is album art flattened with its frame into a single bitmap?
+	 *
+	 * @return true if flattened, false otherwise
+	 */
+	public boolean isArtFlattened() {
+		return preferences.getBoolean(FLATTEN_ART, false);
+	}
+
+	/**
+	 * Set whether album art is flattened with its frame into a single bitmap
+	 *
+	 * @param flatten
+	 * @return this settings instance
+	 */
+	public PlayPreferences setArtFlattened(final boolean flatten) {
+		preferences.edit().putBoolean(FLATTEN_ART, flatten).commit();
+		return this;
+	}
+
+	/**
+	 * Get time in milliseconds that a burst of status events is coalesced
+	 * over before the newest one is processed
+	 *
+	 * @return window, 0 if events are processed immediately
+	 */
+	public int getCoalesceWindow() {
+		return preferences.getInt(COALESCE_WINDOW, DEFAULT_COALESCE_WINDOW);
+	}
+
+	/**
+	 * Set time in milliseconds that a burst of status events is coalesced
+	 * over
+	 *
+	 * @param window
+	 * @return this settings instance
+	 */
+	public PlayPreferences setCoalesceWindow(final int window) {
+		preferences.edit().putInt(COALESCE_WINDOW, Math.max(0, window))
+				.commit();
+		return this;
+	}
 }
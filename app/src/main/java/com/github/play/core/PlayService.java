@@ -26,8 +26,8 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParseException;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
@@ -217,23 +217,101 @@ public class PlayService {
 	}
 
 	/**
-	 * Download art image for {@link Song} to given file
+	 * Download art image for {@link Song} to given output stream
+	 * <p>
+	 * The stream is not closed by this method
 	 *
 	 * @param song
-	 * @param file
-	 * @return true if succeeded, false if failed
+	 * @param output
+	 * @return true if downloaded, false if the server has no art for the song
+	 * @throws IOException
+	 *             if the request or download failed
+	 */
+	public boolean getArt(Song song, OutputStream output) throws IOException {
+		return getArt(song, output, null);
+	}
+
+	/**
+	 * Download art image for {@link Song} to given output stream and record
+	 * the validators of the downloaded image in the given metadata
+	 * <p>
+	 * The stream is not closed by this method
+	 *
+	 * @param song
+	 * @param output
+	 * @param metadata
+	 *            may be null
+	 * @return true if downloaded, false if the server has no art for the song
+	 * @throws IOException
+	 *             if the request or download failed
+	 */
+	public boolean getArt(Song song, OutputStream output, ArtMetadata metadata)
+			throws IOException {
+		try {
+			HttpRequest request = get(getArtUrl(song));
+			return receiveArt(request, output, metadata);
+		} catch (HttpRequestException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Revalidate previously downloaded art image for {@link Song} with a
+	 * conditional request
+	 * <p>
+	 * The image is only written to the output stream when it changed on the
+	 * server. The metadata is updated unless the art is missing.
+	 *
+	 * @param song
+	 * @param output
+	 * @param metadata
+	 * @return status
+	 * @throws IOException
+	 *             if the request or download failed
 	 */
-	public boolean getArt(Song song, File file) {
+	public ArtMetadata.Status revalidateArt(Song song, OutputStream output,
+			ArtMetadata metadata) throws IOException {
 		try {
-			HttpRequest request = get("images/art/" + song.id + ".png");
-			if (request.ok() && request.contentLength() > 0) {
-				request.receive(file);
-				return true;
-			} else
-				return false;
+			HttpRequest request = get(getArtUrl(song));
+			if (metadata.etag != null)
+				request.ifNoneMatch(metadata.etag);
+			long since = metadata.lastModified > 0 ? metadata.lastModified
+					: metadata.fetchedAt;
+			if (since > 0)
+				request.ifModifiedSince(since);
+
+			if (request.notModified()) {
+				metadata.fetchedAt = System.currentTimeMillis();
+				return ArtMetadata.Status.NOT_MODIFIED;
+			}
+			if (receiveArt(request, output, metadata))
+				return ArtMetadata.Status.MODIFIED;
+			else
+				return ArtMetadata.Status.MISSING;
 		} catch (HttpRequestException e) {
+			throw e.getCause();
+		}
+	}
+
+	private String getArtUrl(final Song song) {
+		return "images/art/" + song.id + ".png";
+	}
+
+	private boolean receiveArt(final HttpRequest request,
+			final OutputStream output, final ArtMetadata metadata)
+			throws IOException {
+		if (request.notFound())
+			return false;
+		if (ok(request).contentLength() == 0)
 			return false;
+
+		if (metadata != null) {
+			metadata.etag = request.eTag();
+			metadata.lastModified = request.lastModified();
+			metadata.fetchedAt = System.currentTimeMillis();
 		}
+		request.receive(output);
+		return true;
 	}
 
 	/**
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.emorym.android_pusher.Pusher;
+import com.emorym.android_pusher.PusherCallback;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import org.json.JSONObject;
+
+/**
+ * Supervisor of a pusher connection that reconnects when no messages arrive
+ * <p>
+ * Every message received counts as a heartbeat. A ping is sent when the
+ * connection has been idle for {@link #PING_INTERVAL} and the connection is
+ * replaced when nothing arrives within {@link #PONG_TIMEOUT} of the ping.
+ * The pusher library also reconnects dropped sockets on its own, a new
+ * connection being established on a connected pusher is treated as a
+ * reconnect as well.
+ * Reconnects are retried with an exponential backoff that is jittered so
+ * clients that lost the connection together don't reconnect together.
+ * <p>
+ * All methods must be called from the main thread
+ */
+public class PusherSupervisor {
+
+	/**
+	 * Connection being supervised
+	 */
+	public interface Connection {
+
+		/**
+		 * Create pusher and subscribe to the channels of this connection
+		 *
+		 * @return pusher
+		 */
+		Pusher connect();
+
+		/**
+		 * Connection was re-established after it was lost
+		 * <p>
+		 * Events sent while disconnected were missed and should be requested
+		 * again
+		 */
+		void onReconnected();
+	}
+
+	/**
+	 * Time in milliseconds between connection checks
+	 */
+	public static final long CHECK_INTERVAL = 15 * 1000;
+
+	/**
+	 * Time in milliseconds without messages before a ping is sent
+	 */
+	public static final long PING_INTERVAL = 60 * 1000;
+
+	/**
+	 * Time in milliseconds to wait for any message after a ping
+	 */
+	public static final long PONG_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Time in milliseconds to wait for the first message of a new connection
+	 */
+	public static final long CONNECT_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Minimum time in milliseconds before reconnecting
+	 */
+	public static final long MIN_BACKOFF = 1000;
+
+	/**
+	 * Maximum time in milliseconds before reconnecting
+	 */
+	public static final long MAX_BACKOFF = 5 * 60 * 1000;
+
+	/**
+	 * Event sent by the server when a socket is connected
+	 */
+	private static final String CONNECTION_ESTABLISHED = "pusher:connection_established";
+
+	private static final String TAG = "PusherSupervisor";
+
+	private static final Random RANDOM = new Random();
+
+	private final Handler handler = new Handler();
+
+	private final Executor backgroundThread;
+
+	private final Connection connection;
+
+	private final PusherCallback heartbeat = new PusherCallback() {
+
+		public void onEvent(String eventName, JSONObject eventData) {
+			onMessage(eventName);
+		}
+	};
+
+	private final Runnable check = new Runnable() {
+
+		public void run() {
+			check();
+		}
+	};
+
+	private final Runnable connect = new Runnable() {
+
+		public void run() {
+			connect();
+		}
+	};
+
+	private Pusher pusher;
+
+	private boolean running;
+
+	private boolean connected;
+
+	/**
+	 * True once the first connection was established
+	 */
+	private boolean established;
+
+	private int attempts;
+
+	private long connectStarted;
+
+	private long lastMessage;
+
+	private long lastPing;
+
+	/**
+	 * Create supervisor
+	 *
+	 * @param backgroundThread
+	 *            used for network calls of the pusher
+	 * @param connection
+	 */
+	public PusherSupervisor(final Executor backgroundThread,
+			final Connection connection) {
+		this.backgroundThread = backgroundThread;
+		this.connection = connection;
+	}
+
+	/**
+	 * Connect and start supervising the connection
+	 */
+	public void start() {
+		if (running)
+			return;
+
+		running = true;
+		connect();
+	}
+
+	/**
+	 * Is the connection established and receiving messages?
+	 *
+	 * @return true if connected, false otherwise
+	 */
+	public boolean isConnected() {
+		return running && connected;
+	}
+
+	/**
+	 * Stop supervising and disconnect
+	 */
+	public void stop() {
+		running = false;
+		handler.removeCallbacks(check);
+		handler.removeCallbacks(connect);
+		setConnected(false);
+		disconnect();
+	}
+
+	private void connect() {
+		if (!running)
+			return;
+
+		connectStarted = SystemClock.elapsedRealtime();
+		lastPing = 0;
+		pusher = connection.connect();
+		pusher.bindAll(heartbeat);
+		scheduleCheck();
+	}
+
+	private void disconnect() {
+		final Pusher pusher = this.pusher;
+		this.pusher = null;
+		if (pusher != null)
+			backgroundThread.execute(new Runnable() {
+
+				public void run() {
+					pusher.disconnect();
+				}
+			});
+	}
+
+	private void onMessage(final String eventName) {
+		if (!running)
+			return;
+
+		long now = SystemClock.elapsedRealtime();
+		if (!connected) {
+			setConnected(true);
+			attempts = 0;
+			if (established)
+				onReconnected(now);
+			established = true;
+		} else if (CONNECTION_ESTABLISHED.equals(eventName)) {
+			// The library reconnected the socket of this pusher itself
+			Log.d(TAG, "Pusher reconnected");
+			setConnected(true);
+			onReconnected(now);
+		}
+		lastMessage = now;
+		StatusStats.LAST_MESSAGE.set(now);
+	}
+
+	private void onReconnected(final long now) {
+		StatusStats.RECONNECTS.incrementAndGet();
+		if (lastMessage > 0)
+			StatusStats.GAPS.add(now - lastMessage);
+		connection.onReconnected();
+	}
+
+	private void setConnected(final boolean connected) {
+		this.connected = connected;
+		StatusStats.CONNECTED_SINCE.set(connected ? SystemClock
+				.elapsedRealtime() : 0);
+	}
+
+	private void scheduleCheck() {
+		handler.removeCallbacks(check);
+		handler.postDelayed(check, CHECK_INTERVAL);
+	}
+
+	private void check() {
+		if (!running)
+			return;
+
+		long now = SystemClock.elapsedRealtime();
+		if (!connected) {
+			if (now - connectStarted >= CONNECT_TIMEOUT) {
+				Log.d(TAG, "Connecting timed out");
+				reconnect();
+				return;
+			}
+		} else if (lastPing > lastMessage) {
+			if (now - lastPing >= PONG_TIMEOUT) {
+				Log.d(TAG, "No response to ping");
+				StatusStats.HEARTBEAT_TIMEOUTS.incrementAndGet();
+				reconnect();
+				return;
+			}
+		} else if (now - lastMessage >= PING_INTERVAL)
+			ping(now);
+		scheduleCheck();
+	}
+
+	private void ping(final long now) {
+		lastPing = now;
+		final Pusher pusher = this.pusher;
+		backgroundThread.execute(new Runnable() {
+
+			public void run() {
+				pusher.send("pusher:ping", new JSONObject(), null);
+			}
+		});
+	}
+
+	private void reconnect() {
+		setConnected(false);
+		disconnect();
+
+		long backoff = Math.min(MAX_BACKOFF,
+				MIN_BACKOFF << Math.min(attempts, 16));
+		attempts++;
+		// Wait between half and all of the backoff
+		long delay = backoff / 2 + (long) (RANDOM.nextDouble() * backoff / 2);
+		Log.d(TAG, "Reconnecting in " + delay + "ms");
+		handler.postDelayed(connect, delay);
+	}
+}
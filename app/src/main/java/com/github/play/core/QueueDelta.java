@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Difference between two versions of the queue
+ * <p>
+ * Only songs that were inserted or changed are included, every other position
+ * references the index of the song in the base version. A delta can only be
+ * applied to the exact queue of its {@link #baseVersion}.
+ */
+public class QueueDelta {
+
+	/**
+	 * Compute delta between queues
+	 * <p>
+	 * Songs are considered unchanged when the same instance is in both queues
+	 * which is the case for songs reused by {@link StatusEventDecoder}
+	 *
+	 * @param baseVersion
+	 * @param base
+	 * @param version
+	 * @param playing
+	 * @param queued
+	 * @return delta
+	 */
+	public static QueueDelta compute(final long baseVersion, final Song[] base,
+			final long version, final Song playing, final Song[] queued) {
+		Map<Song, Integer> baseIndexes = new HashMap<Song, Integer>(
+				base.length * 2);
+		for (int i = 0; i < base.length; i++)
+			baseIndexes.put(base[i], i);
+
+		int[] sources = new int[queued.length];
+		int insertions = 0;
+		for (int i = 0; i < queued.length; i++) {
+			Integer index = baseIndexes.get(queued[i]);
+			if (index != null && base[index] == queued[i]) {
+				sources[i] = index;
+				// Songs can't be queued twice so each base song is used once
+				baseIndexes.remove(queued[i]);
+			} else {
+				sources[i] = -1;
+				insertions++;
+			}
+		}
+
+		Song[] inserted = new Song[insertions];
+		int insertion = 0;
+		int moves = 0;
+		int lastSource = -1;
+		for (int i = 0; i < queued.length; i++)
+			if (sources[i] == -1)
+				inserted[insertion++] = queued[i];
+			else if (sources[i] < lastSource)
+				moves++;
+			else
+				lastSource = sources[i];
+
+		return new QueueDelta(baseVersion, version, playing, sources,
+				inserted, base.length - (queued.length - insertions), moves);
+	}
+
+	/**
+	 * Version of the queue this delta applies to
+	 */
+	public final long baseVersion;
+
+	/**
+	 * Version of the queue after applying this delta
+	 */
+	public final long version;
+
+	/**
+	 * Currently playing song
+	 */
+	public final Song playing;
+
+	/**
+	 * Number of songs in the base queue that are no longer queued
+	 */
+	public final int removals;
+
+	/**
+	 * Number of songs that moved before a song that preceded them
+	 */
+	public final int moves;
+
+	/**
+	 * Index in the base queue for each position or -1 for the next song in
+	 * {@link #inserted}
+	 */
+	private final int[] sources;
+
+	private final Song[] inserted;
+
+	private QueueDelta(final long baseVersion, final long version,
+			final Song playing, final int[] sources, final Song[] inserted,
+			final int removals, final int moves) {
+		this.baseVersion = baseVersion;
+		this.version = version;
+		this.playing = playing;
+		this.sources = sources;
+		this.inserted = inserted;
+		this.removals = removals;
+		this.moves = moves;
+	}
+
+	/**
+	 * Get number of songs inserted or changed
+	 *
+	 * @return count
+	 */
+	public int getInsertions() {
+		return inserted.length;
+	}
+
+	/**
+	 * Get number of songs in the queue after applying this delta
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return sources.length;
+	}
+
+	/**
+	 * Is the queue unchanged?
+	 *
+	 * @return true if unchanged, false otherwise
+	 */
+	public boolean isEmpty() {
+		return inserted.length == 0 && removals == 0 && moves == 0;
+	}
+
+	/**
+	 * Apply delta to the queue of the base version
+	 *
+	 * @param base
+	 * @return new queue
+	 */
+	public Song[] apply(final Song[] base) {
+		Song[] queued = new Song[sources.length];
+		int insertion = 0;
+		for (int i = 0; i < sources.length; i++)
+			if (sources[i] == -1)
+				queued[i] = inserted[insertion++];
+			else
+				queued[i] = base[sources[i]];
+		return queued;
+	}
+
+	@Override
+	public String toString() {
+		return baseVersion + " -> " + version + ": +" + inserted.length + " -"
+				+ removals + " ~" + moves;
+	}
+}
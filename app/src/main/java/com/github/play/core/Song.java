@@ -15,14 +15,29 @@
  */
 package com.github.play.core;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Song model
  */
-public class Song implements Serializable {
+public class Song implements Parcelable {
 
-	private static final long serialVersionUID = -4757872544894909909L;
+	/**
+	 * Creator of songs from parcels
+	 */
+	public static final Creator<Song> CREATOR = new Creator<Song>() {
+
+		public Song createFromParcel(Parcel source) {
+			return new Song(source.readString(), source.readString(),
+					source.readString(), source.readString(),
+					source.readInt() == 1, source.readDouble());
+		}
+
+		public Song[] newArray(int size) {
+			return new Song[size];
+		}
+	};
 
 	/**
 	 * Id
@@ -54,6 +69,8 @@ public class Song implements Serializable {
 	 */
 	public final double duration;
 
+	private String albumId;
+
 	/**
 	 * Create song
 	 *
@@ -85,7 +102,9 @@ public class Song implements Serializable {
 	 * @return id
 	 */
 	public String getAlbumId() {
-		return artist + '#' + album;
+		if (albumId == null)
+			albumId = artist + '#' + album;
+		return albumId;
 	}
 
 	@Override
@@ -100,6 +119,19 @@ public class Song implements Serializable {
 		return id.equals(((Song) o).id);
 	}
 
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeString(id);
+		dest.writeString(name);
+		dest.writeString(artist);
+		dest.writeString(album);
+		dest.writeInt(starred ? 1 : 0);
+		dest.writeDouble(duration);
+	}
+
 	@Override
 	public String toString() {
 		return name + " by " + artist + " from " + album;
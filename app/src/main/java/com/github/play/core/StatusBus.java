@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process bus of status events delivered to listeners on the main thread
+ * <p>
+ * Events are passed by reference so the published {@link StatusUpdate} and
+ * its queue must not be modified after being published.
+ */
+public class StatusBus {
+
+	/**
+	 * Listener to status events
+	 * <p>
+	 * All methods are called on the main thread
+	 */
+	public interface Listener {
+
+		/**
+		 * Status changed
+		 *
+		 * @param update
+		 * @param version
+		 * @param delta
+		 *            from the previous version or null if not computed
+		 */
+		void onStatus(StatusUpdate update, long version, QueueDelta delta);
+
+		/**
+		 * Streaming started or stopped
+		 *
+		 * @param streaming
+		 */
+		void onStreaming(boolean streaming);
+
+		/**
+		 * Songs were queued from this application
+		 */
+		void onQueueChanged();
+	}
+
+	private static final CopyOnWriteArrayList<Listener> LISTENERS = new CopyOnWriteArrayList<Listener>();
+
+	private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Register listener
+	 * <p>
+	 * Registering a listener that is already registered has no effect
+	 *
+	 * @param listener
+	 */
+	public static void register(final Listener listener) {
+		LISTENERS.addIfAbsent(listener);
+	}
+
+	/**
+	 * Unregister listener
+	 *
+	 * @param listener
+	 */
+	public static void unregister(final Listener listener) {
+		LISTENERS.remove(listener);
+	}
+
+	/**
+	 * Publish status
+	 *
+	 * @param update
+	 * @param version
+	 * @param delta
+	 * @param eventStart
+	 *            time the event was received in {@link System#nanoTime()}
+	 *            units
+	 */
+	public static void publishStatus(final StatusUpdate update,
+			final long version, final QueueDelta delta, final long eventStart) {
+		StatusStats.PUBLISHED.incrementAndGet();
+		HANDLER.post(new Runnable() {
+
+			public void run() {
+				for (Listener listener : LISTENERS)
+					listener.onStatus(update, version, delta);
+				StatusStats.LATENCY.addSince(eventStart);
+			}
+		});
+	}
+
+	/**
+	 * Publish streaming state
+	 *
+	 * @param streaming
+	 */
+	public static void publishStreaming(final boolean streaming) {
+		HANDLER.post(new Runnable() {
+
+			public void run() {
+				for (Listener listener : LISTENERS)
+					listener.onStreaming(streaming);
+			}
+		});
+	}
+
+	/**
+	 * Publish that songs were queued
+	 */
+	public static void publishQueueChanged() {
+		HANDLER.post(new Runnable() {
+
+			public void run() {
+				for (Listener listener : LISTENERS)
+					listener.onQueueChanged();
+			}
+		});
+	}
+}
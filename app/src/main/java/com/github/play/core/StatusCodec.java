@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec for {@link StatusUpdate} instances
+ * <p>
+ * Artist and album names are written once to a string table at the start of
+ * each update and songs reference them by index, since queues usually contain
+ * several songs from the same artists and albums.
+ */
+public class StatusCodec {
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Index of null strings in the string table
+	 */
+	private static final int NULL_INDEX = 0;
+
+	/**
+	 * Maximum number of strings or queued songs in an update
+	 */
+	private static final int MAX_COUNT = 65536;
+
+	/**
+	 * Minimum number of bytes a string in the string table is written as
+	 */
+	private static final int MIN_STRING_SIZE = 2;
+
+	/**
+	 * Minimum number of bytes a song is written as
+	 */
+	private static final int MIN_SONG_SIZE = 13;
+
+	/**
+	 * Encode update to bytes
+	 *
+	 * @param update
+	 * @return bytes
+	 * @throws IOException
+	 */
+	public static byte[] encode(final StatusUpdate update) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(update, new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode update from bytes
+	 *
+	 * @param bytes
+	 * @return update
+	 * @throws IOException
+	 */
+	public static StatusUpdate decode(final byte[] bytes) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * Write update to output
+	 * <p>
+	 * The output is not flushed or closed by this method
+	 *
+	 * @param update
+	 * @param output
+	 * @throws IOException
+	 */
+	public static void write(final StatusUpdate update,
+			final DataOutputStream output) throws IOException {
+		Song[] queued = update.queued != null ? update.queued : new Song[0];
+
+		Map<String, Integer> indexes = new HashMap<String, Integer>();
+		List<String> table = new ArrayList<String>();
+		if (update.playing != null)
+			addNames(update.playing, indexes, table);
+		for (Song song : queued)
+			addNames(song, indexes, table);
+
+		output.writeByte(VERSION);
+		writeVarInt(output, table.size());
+		for (String value : table)
+			output.writeUTF(value);
+
+		output.writeBoolean(update.playing != null);
+		if (update.playing != null)
+			writeSong(output, update.playing, indexes);
+		writeVarInt(output, queued.length);
+		for (Song song : queued)
+			writeSong(output, song, indexes);
+	}
+
+	/**
+	 * Read update from input
+	 * <p>
+	 * The input is not closed by this method and must report the bytes
+	 * remaining from {@link DataInputStream#available()} like file and byte
+	 * array streams do, so corrupt counts are rejected before allocating
+	 *
+	 * @param input
+	 * @return update
+	 * @throws IOException
+	 */
+	public static StatusUpdate read(final DataInputStream input)
+			throws IOException {
+		int version = input.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported status version " + version);
+
+		String[] table = new String[readCount(input, MIN_STRING_SIZE) + 1];
+		for (int i = 1; i < table.length; i++)
+			table[i] = input.readUTF();
+
+		Song playing = null;
+		if (input.readBoolean())
+			playing = readSong(input, table);
+		Song[] queued = new Song[readCount(input, MIN_SONG_SIZE)];
+		for (int i = 0; i < queued.length; i++)
+			queued[i] = readSong(input, table);
+		return new StatusUpdate(playing, queued);
+	}
+
+	private static void addNames(final Song song,
+			final Map<String, Integer> indexes, final List<String> table) {
+		addName(song.artist, indexes, table);
+		addName(song.album, indexes, table);
+	}
+
+	private static void addName(final String name,
+			final Map<String, Integer> indexes, final List<String> table) {
+		if (name != null && !indexes.containsKey(name)) {
+			table.add(name);
+			// Index zero is reserved for null names
+			indexes.put(name, table.size());
+		}
+	}
+
+	private static void writeSong(final DataOutputStream output,
+			final Song song, final Map<String, Integer> indexes)
+			throws IOException {
+		writeString(output, song.id);
+		writeString(output, song.name);
+		writeVarInt(output, song.artist != null ? indexes.get(song.artist)
+				: NULL_INDEX);
+		writeVarInt(output, song.album != null ? indexes.get(song.album)
+				: NULL_INDEX);
+		output.writeBoolean(song.starred);
+		output.writeDouble(song.duration);
+	}
+
+	private static Song readSong(final DataInputStream input,
+			final String[] table) throws IOException {
+		String id = readString(input);
+		String name = readString(input);
+		String artist = table[readIndex(input, table)];
+		String album = table[readIndex(input, table)];
+		return new Song(id, name, artist, album, input.readBoolean(),
+				input.readDouble());
+	}
+
+	private static int readIndex(final DataInputStream input,
+			final String[] table) throws IOException {
+		int index = readVarInt(input);
+		if (index < 0 || index >= table.length)
+			throw new IOException("Invalid string index " + index);
+		return index;
+	}
+
+	/**
+	 * Read count of items that are each written as at least the given number
+	 * of bytes
+	 *
+	 * @param input
+	 * @param minSize
+	 * @return count
+	 * @throws IOException
+	 *             if the count is negative, too large or more than the
+	 *             remaining input can hold
+	 */
+	private static int readCount(final DataInputStream input,
+			final int minSize) throws IOException {
+		int count = readVarInt(input);
+		if (count < 0 || count > MAX_COUNT
+				|| (long) count * minSize > input.available())
+			throw new IOException("Invalid count " + count);
+		return count;
+	}
+
+	private static String readString(final DataInputStream input)
+			throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	private static void writeString(final DataOutputStream output,
+			final String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null)
+			output.writeUTF(value);
+	}
+
+	private static void writeVarInt(final DataOutputStream output, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
+	private static int readVarInt(final DataInputStream input)
+			throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+}
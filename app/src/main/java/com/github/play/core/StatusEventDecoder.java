@@ -0,0 +1,322 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import static com.google.gson.stream.JsonToken.BEGIN_ARRAY;
+import static com.google.gson.stream.JsonToken.BEGIN_OBJECT;
+import static com.google.gson.stream.JsonToken.BOOLEAN;
+import static com.google.gson.stream.JsonToken.NUMBER;
+import static com.google.gson.stream.JsonToken.STRING;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Decoder of now playing events that reuses the {@link Song} instances of the
+ * previously decoded event
+ * <p>
+ * Songs are reused when their id and all other fields are unchanged and the
+ * queue array is reused when every queued song is reused in the same order,
+ * so repeated events for an unchanged queue allocate almost nothing beyond
+ * the returned {@link StatusUpdate}.
+ * <p>
+ * Events can be decoded from an already parsed {@link JSONObject} or streamed
+ * from a {@link Reader}. Instances are not thread-safe.
+ */
+public class StatusEventDecoder {
+
+	/**
+	 * Fields of the song currently being decoded
+	 */
+	private static class Fields {
+
+		String id;
+
+		String name;
+
+		String artist;
+
+		String album;
+
+		boolean starred;
+
+		double duration;
+
+		void clear() {
+			id = "";
+			name = "";
+			artist = "";
+			album = "";
+			starred = false;
+			duration = Double.NaN;
+		}
+
+		boolean matches(final Song song) {
+			return id.equals(song.id) && name.equals(song.name)
+					&& artist.equals(song.artist) && album.equals(song.album)
+					&& starred == song.starred
+					&& Double.compare(duration, song.duration) == 0;
+		}
+
+		Song create() {
+			return new Song(id, name, artist, album, starred, duration);
+		}
+	}
+
+	private static final Song[] NO_SONGS = new Song[0];
+
+	private final Fields fields = new Fields();
+
+	private Song playing;
+
+	private Song[] queued = NO_SONGS;
+
+	/**
+	 * Position in {@link #queued} where the next queued song is expected
+	 */
+	private int cursor;
+
+	/**
+	 * Map of ids to songs of the previous event, created only when songs
+	 * don't arrive in the previous order
+	 */
+	private Map<String, Song> previousById;
+
+	private Song[] decodedQueue = new Song[16];
+
+	private int decodedCount;
+
+	private int reusedCount;
+
+	private int createdCount;
+
+	/**
+	 * Get number of songs reused from previous events
+	 *
+	 * @return count
+	 */
+	public int getReusedCount() {
+		return reusedCount;
+	}
+
+	/**
+	 * Get number of songs created because they changed or were new
+	 *
+	 * @return count
+	 */
+	public int getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * Decode event from parsed JSON
+	 *
+	 * @param event
+	 * @return update or null if the event isn't a now playing event
+	 */
+	public StatusUpdate decode(final JSONObject event) {
+		JSONObject nowPlaying = event.optJSONObject("now_playing");
+		if (nowPlaying == null)
+			return null;
+		JSONArray songs = event.optJSONArray("songs");
+		if (songs == null)
+			return null;
+
+		start();
+		read(nowPlaying);
+		Song decodedPlaying = resolve(false);
+		for (int i = 0; i < songs.length(); i++) {
+			JSONObject song = songs.optJSONObject(i);
+			if (song == null)
+				continue;
+			read(song);
+			addQueued(resolve(true));
+		}
+		return finish(decodedPlaying);
+	}
+
+	/**
+	 * Decode event by streaming it from the reader
+	 * <p>
+	 * The reader is not closed by this method
+	 *
+	 * @param reader
+	 * @return update or null if the event isn't a now playing event
+	 * @throws IOException
+	 */
+	public StatusUpdate decode(final Reader reader) throws IOException {
+		JsonReader json = new JsonReader(reader);
+		if (json.peek() != BEGIN_OBJECT)
+			return null;
+
+		start();
+		Song decodedPlaying = null;
+		boolean hasPlaying = false;
+		boolean hasSongs = false;
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if ("now_playing".equals(name) && json.peek() == BEGIN_OBJECT) {
+				read(json);
+				decodedPlaying = resolve(false);
+				hasPlaying = true;
+			} else if ("songs".equals(name) && json.peek() == BEGIN_ARRAY) {
+				json.beginArray();
+				while (json.hasNext())
+					if (json.peek() == BEGIN_OBJECT) {
+						read(json);
+						addQueued(resolve(true));
+					} else
+						json.skipValue();
+				json.endArray();
+				hasSongs = true;
+			} else
+				json.skipValue();
+		}
+		json.endObject();
+
+		if (!hasPlaying || !hasSongs) {
+			decodedCount = 0;
+			return null;
+		}
+		return finish(decodedPlaying);
+	}
+
+	private void start() {
+		cursor = 0;
+		decodedCount = 0;
+		previousById = null;
+	}
+
+	private void read(final JSONObject song) {
+		fields.clear();
+		fields.id = song.optString("id");
+		fields.name = song.optString("name");
+		fields.artist = song.optString("artist");
+		fields.album = song.optString("album");
+		fields.starred = song.optBoolean("starred");
+		fields.duration = song.optDouble("duration");
+	}
+
+	private void read(final JsonReader json) throws IOException {
+		fields.clear();
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if ("starred".equals(name) && json.peek() == BOOLEAN)
+				fields.starred = json.nextBoolean();
+			else if ("duration".equals(name)
+					&& (json.peek() == NUMBER || json.peek() == STRING))
+				fields.duration = json.nextDouble();
+			else if (json.peek() != STRING && json.peek() != NUMBER)
+				json.skipValue();
+			else if ("id".equals(name))
+				fields.id = json.nextString();
+			else if ("name".equals(name))
+				fields.name = json.nextString();
+			else if ("artist".equals(name))
+				fields.artist = json.nextString();
+			else if ("album".equals(name))
+				fields.album = json.nextString();
+			else
+				json.skipValue();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Get previous song matching the current fields or create a new song
+	 *
+	 * @param inQueue
+	 *            true if the song is in the queue, false if playing
+	 * @return song
+	 */
+	private Song resolve(final boolean inQueue) {
+		Song previous = null;
+		if (inQueue && cursor < queued.length
+				&& fields.id.equals(queued[cursor].id))
+			previous = queued[cursor++];
+		else if (!inQueue && playing != null && fields.id.equals(playing.id))
+			previous = playing;
+		// The queue usually advances by one with the head becoming the
+		// playing song
+		else if (!inQueue && queued.length > 0
+				&& fields.id.equals(queued[0].id)) {
+			previous = queued[0];
+			cursor = 1;
+		} else
+			previous = getPreviousById().get(fields.id);
+
+		if (previous != null && fields.matches(previous)) {
+			reusedCount++;
+			return previous;
+		}
+		createdCount++;
+		return fields.create();
+	}
+
+	private Map<String, Song> getPreviousById() {
+		if (previousById == null) {
+			previousById = new HashMap<String, Song>(queued.length + 1);
+			for (Song song : queued)
+				previousById.put(song.id, song);
+			if (playing != null)
+				previousById.put(playing.id, playing);
+		}
+		return previousById;
+	}
+
+	private void addQueued(final Song song) {
+		if (decodedCount == decodedQueue.length) {
+			Song[] grown = new Song[decodedQueue.length * 2];
+			System.arraycopy(decodedQueue, 0, grown, 0, decodedCount);
+			decodedQueue = grown;
+		}
+		decodedQueue[decodedCount++] = song;
+	}
+
+	private StatusUpdate finish(final Song decodedPlaying) {
+		if (!isSameQueue()) {
+			Song[] copy = new Song[decodedCount];
+			System.arraycopy(decodedQueue, 0, copy, 0, decodedCount);
+			queued = copy;
+		}
+		// Release references held by the scratch array
+		for (int i = 0; i < decodedCount; i++)
+			decodedQueue[i] = null;
+		decodedCount = 0;
+		previousById = null;
+
+		playing = decodedPlaying;
+		return new StatusUpdate(playing, queued);
+	}
+
+	private boolean isSameQueue() {
+		if (decodedCount != queued.length)
+			return false;
+		for (int i = 0; i < decodedCount; i++)
+			if (decodedQueue[i] != queued[i])
+				return false;
+		return true;
+	}
+}
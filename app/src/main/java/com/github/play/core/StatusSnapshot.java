@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Last known status persisted so it can be displayed on start before the
+ * current status is fetched
+ * <p>
+ * Statuses are written with the {@link StatusCodec} in the background and
+ * only the newest status is written when several are saved in quick
+ * succession.
+ */
+public class StatusSnapshot {
+
+	private static final String TAG = "StatusSnapshot";
+
+	private static final String FILE = "status-snapshot";
+
+	private static final int VERSION = 1;
+
+	private static StatusSnapshot instance;
+
+	/**
+	 * Get snapshot for context
+	 *
+	 * @param context
+	 * @return snapshot
+	 */
+	public static synchronized StatusSnapshot get(final Context context) {
+		if (instance == null)
+			instance = new StatusSnapshot(new File(context
+					.getApplicationContext().getFilesDir(), FILE));
+		return instance;
+	}
+
+	/**
+	 * Status read from disk
+	 */
+	public static class Saved {
+
+		/**
+		 * Status
+		 */
+		public final StatusUpdate update;
+
+		/**
+		 * Time the status was saved in {@link System#currentTimeMillis()}
+		 * units
+		 */
+		public final long savedAt;
+
+		private Saved(final StatusUpdate update, final long savedAt) {
+			this.update = update;
+			this.savedAt = savedAt;
+		}
+	}
+
+	private final File file;
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+	/**
+	 * Newest status that hasn't been written yet
+	 */
+	private final AtomicReference<StatusUpdate> pending = new AtomicReference<StatusUpdate>();
+
+	private final Runnable write = new Runnable() {
+
+		public void run() {
+			StatusUpdate update = pending.getAndSet(null);
+			if (update != null)
+				write(update);
+		}
+	};
+
+	private StatusSnapshot(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Save status in the background
+	 *
+	 * @param update
+	 */
+	public void save(final StatusUpdate update) {
+		// A write is already queued if a status was pending
+		if (pending.getAndSet(update) == null)
+			writer.execute(write);
+	}
+
+	/**
+	 * Delete the saved status in the background
+	 */
+	public void clear() {
+		pending.set(null);
+		writer.execute(new Runnable() {
+
+			public void run() {
+				file.delete();
+			}
+		});
+	}
+
+	/**
+	 * Read saved status
+	 * <p>
+	 * This reads from disk and should not be called from the main thread
+	 *
+	 * @return saved status or null if none saved or unreadable
+	 */
+	public Saved read() {
+		if (!file.isFile())
+			return null;
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (input.readInt() != VERSION)
+				return null;
+			long savedAt = input.readLong();
+			return new Saved(StatusCodec.read(input), savedAt);
+		} catch (IOException e) {
+			Log.d(TAG, "Reading status snapshot failed", e);
+			return null;
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+
+	private void write(final StatusUpdate update) {
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)));
+			output.writeInt(VERSION);
+			output.writeLong(System.currentTimeMillis());
+			StatusCodec.write(update, output);
+			output.close();
+			output = null;
+			if (!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			Log.d(TAG, "Writing status snapshot failed", e);
+			temp.delete();
+		} finally {
+			if (output != null)
+				try {
+					output.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of status events
+ */
+public class StatusStats {
+
+	/**
+	 * Status updates published to the {@link StatusBus}
+	 */
+	public static final AtomicInteger PUBLISHED = new AtomicInteger();
+
+	/**
+	 * Status updates published with a {@link QueueDelta}
+	 */
+	public static final AtomicInteger DELTAS = new AtomicInteger();
+
+	/**
+	 * Pusher events dropped because a newer event arrived within the
+	 * coalescing window
+	 */
+	public static final AtomicInteger COALESCED = new AtomicInteger();
+
+	/**
+	 * Notification updates skipped because the playing song was unchanged
+	 */
+	public static final AtomicInteger NOTIFICATIONS_SKIPPED = new AtomicInteger();
+
+	/**
+	 * Events dropped because the pipeline queue was full
+	 */
+	public static final AtomicInteger DROPPED = new AtomicInteger();
+
+	/**
+	 * Time from receiving an event until the pipeline started processing it,
+	 * including the coalescing window
+	 */
+	public static final TimingStats RECEIVE = new TimingStats();
+
+	/**
+	 * Time to decode events
+	 */
+	public static final TimingStats DECODE = new TimingStats(MICROSECONDS);
+
+	/**
+	 * Time to compute queue deltas
+	 */
+	public static final TimingStats DIFF = new TimingStats(MICROSECONDS);
+
+	/**
+	 * Time to publish statuses to the bus and snapshot
+	 */
+	public static final TimingStats PUBLISH = new TimingStats(MICROSECONDS);
+
+	/**
+	 * Time to prefetch art and update the notification
+	 */
+	public static final TimingStats NOTIFY = new TimingStats(MICROSECONDS);
+
+	/**
+	 * Time from receiving an event until listeners were updated
+	 */
+	public static final TimingStats LATENCY = new TimingStats();
+
+	/**
+	 * Pusher connections re-established after being lost
+	 */
+	public static final AtomicInteger RECONNECTS = new AtomicInteger();
+
+	/**
+	 * Pusher connections dropped because a ping went unanswered
+	 */
+	public static final AtomicInteger HEARTBEAT_TIMEOUTS = new AtomicInteger();
+
+	/**
+	 * Status requests made after reconnecting
+	 */
+	public static final AtomicInteger RESYNCS = new AtomicInteger();
+
+	/**
+	 * Time between the last message of a lost connection and the first
+	 * message of its replacement
+	 */
+	public static final TimingStats GAPS = new TimingStats();
+
+	/**
+	 * Time the current connection was established in
+	 * {@link SystemClock#elapsedRealtime()} units or 0 if not connected
+	 */
+	public static final AtomicLong CONNECTED_SINCE = new AtomicLong();
+
+	/**
+	 * Time the last pusher message was received in
+	 * {@link SystemClock#elapsedRealtime()} units or 0 if none received
+	 */
+	public static final AtomicLong LAST_MESSAGE = new AtomicLong();
+
+	private static String since(final long time) {
+		if (time == 0)
+			return "never";
+		return (SystemClock.elapsedRealtime() - time) / 1000 + "s ago";
+	}
+
+	/**
+	 * Append stats as text
+	 *
+	 * @param text
+	 */
+	public static void append(final StringBuilder text) {
+		text.append("  Published: ").append(PUBLISHED.get()).append(", ")
+				.append(DELTAS.get()).append(" as deltas\n");
+		text.append("  Coalesced: ").append(COALESCED.get()).append('\n');
+		text.append("  Notifications skipped: ")
+				.append(NOTIFICATIONS_SKIPPED.get()).append('\n');
+		text.append("  Event to UI: ").append(LATENCY).append('\n');
+		text.append("  Dropped: ").append(DROPPED.get()).append('\n');
+		text.append("  Receive: ").append(RECEIVE).append('\n');
+		text.append("  Decode: ").append(DECODE).append('\n');
+		text.append("  Diff: ").append(DIFF).append('\n');
+		text.append("  Publish: ").append(PUBLISH).append('\n');
+		text.append("  Notify: ").append(NOTIFY).append('\n');
+		text.append("  Connected: ").append(since(CONNECTED_SINCE.get()))
+				.append('\n');
+		text.append("  Last message: ").append(since(LAST_MESSAGE.get()))
+				.append('\n');
+		text.append("  Reconnects: ").append(RECONNECTS.get()).append(", ")
+				.append(HEARTBEAT_TIMEOUTS.get())
+				.append(" heartbeat timeouts, ").append(RESYNCS.get())
+				.append(" resyncs\n");
+		text.append("  Gaps: ").append(GAPS).append('\n');
+	}
+
+	/**
+	 * Reset all stats
+	 */
+	public static void reset() {
+		PUBLISHED.set(0);
+		DELTAS.set(0);
+		COALESCED.set(0);
+		NOTIFICATIONS_SKIPPED.set(0);
+		LATENCY.reset();
+		DROPPED.set(0);
+		RECEIVE.reset();
+		DECODE.reset();
+		DIFF.reset();
+		PUBLISH.reset();
+		NOTIFY.reset();
+		RECONNECTS.set(0);
+		HEARTBEAT_TIMEOUTS.set(0);
+		RESYNCS.set(0);
+		GAPS.reset();
+	}
+}
@@ -15,14 +15,31 @@
  */
 package com.github.play.core;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Wrapper class to encapsulate all data send via a Play push update
  */
-public class StatusUpdate implements Serializable {
+public class StatusUpdate implements Parcelable {
 
-	private static final long serialVersionUID = -877849357884315386L;
+	/**
+	 * Creator of status updates from parcels
+	 */
+	public static final Creator<StatusUpdate> CREATOR = new Creator<StatusUpdate>() {
+
+		public StatusUpdate createFromParcel(Parcel source) {
+			Song playing = null;
+			if (source.readInt() == 1)
+				playing = Song.CREATOR.createFromParcel(source);
+			return new StatusUpdate(playing,
+					source.createTypedArray(Song.CREATOR));
+		}
+
+		public StatusUpdate[] newArray(int size) {
+			return new StatusUpdate[size];
+		}
+	};
 
 	/**
 	 * Currently playing song
@@ -44,4 +61,17 @@ public class StatusUpdate implements Serializable {
 		this.playing = playing;
 		this.queued = queued;
 	}
+
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel dest, int flags) {
+		if (playing != null) {
+			dest.writeInt(1);
+			playing.writeToParcel(dest, flags);
+		} else
+			dest.writeInt(0);
+		dest.writeTypedArray(queued, flags);
+	}
 }
@@ -15,15 +15,28 @@
  */
 package com.github.play.core;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
 /**
  * Information about the streaming location of the Play server and also the
  * pusher application key
  */
-public class StreamingInfo implements Serializable {
+public class StreamingInfo implements Parcelable {
 
-	private static final long serialVersionUID = -6632557432169389967L;
+	/**
+	 * Creator of streaming info from parcels
+	 */
+	public static final Creator<StreamingInfo> CREATOR = new Creator<StreamingInfo>() {
+
+		public StreamingInfo createFromParcel(Parcel source) {
+			return new StreamingInfo(source.readString(), source.readString());
+		}
+
+		public StreamingInfo[] newArray(int size) {
+			return new StreamingInfo[size];
+		}
+	};
 
 	/**
 	 * URL to stream music from
@@ -45,4 +58,13 @@ public class StreamingInfo implements Serializable {
 		this.streamUrl = streamUrl;
 		this.pusherKey = pusherKey;
 	}
+
+	public int describeContents() {
+		return 0;
+	}
+
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeString(streamUrl);
+		dest.writeString(pusherKey);
+	}
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.core;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of measured durations
+ * <p>
+ * The count, total and maximum cover every recorded duration, percentiles are
+ * computed from the most recent {@link #SAMPLES} durations
+ */
+public class TimingStats {
+
+	/**
+	 * Number of recent durations kept to compute percentiles from
+	 */
+	public static final int SAMPLES = 128;
+
+	private final long[] samples = new long[SAMPLES];
+
+	private final TimeUnit unit;
+
+	private int count;
+
+	private long total;
+
+	private long max;
+
+	/**
+	 * Create stats of durations in milliseconds
+	 */
+	public TimingStats() {
+		this(MILLISECONDS);
+	}
+
+	/**
+	 * Create stats of durations in the given unit
+	 *
+	 * @param unit
+	 */
+	public TimingStats(final TimeUnit unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * Record duration
+	 *
+	 * @param duration
+	 *            in the unit of these stats
+	 */
+	public synchronized void add(final long duration) {
+		samples[count % SAMPLES] = duration;
+		count++;
+		total += duration;
+		if (duration > max)
+			max = duration;
+	}
+
+	/**
+	 * Record duration since the given start time
+	 *
+	 * @param start
+	 *            a time in {@link System#nanoTime()} units
+	 */
+	public void addSince(final long start) {
+		add(unit.convert(System.nanoTime() - start, NANOSECONDS));
+	}
+
+	/**
+	 * Get number of recorded durations
+	 *
+	 * @return count
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get average of all recorded durations
+	 *
+	 * @return average or 0 if none recorded
+	 */
+	public synchronized long getAverage() {
+		return count > 0 ? total / count : 0;
+	}
+
+	/**
+	 * Get maximum recorded duration
+	 *
+	 * @return maximum
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	/**
+	 * Get percentile of the recent durations
+	 *
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return duration or 0 if none recorded
+	 */
+	public synchronized long getPercentile(final int percentile) {
+		int size = Math.min(count, SAMPLES);
+		if (size == 0)
+			return 0;
+
+		long[] sorted = new long[size];
+		System.arraycopy(samples, 0, sorted, 0, size);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+		return sorted[Math.max(0, Math.min(size - 1, index))];
+	}
+
+	/**
+	 * Clear all recorded durations
+	 */
+	public synchronized void reset() {
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	@Override
+	public String toString() {
+		String suffix = unit == MICROSECONDS ? "us" : "ms";
+		return getCount() + " x avg " + getAverage() + suffix + ", p50 "
+				+ getPercentile(50) + suffix + ", p90 " + getPercentile(90)
+				+ suffix + ", max " + getMax() + suffix;
+	}
+}
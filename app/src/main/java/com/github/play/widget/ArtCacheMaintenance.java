@@ -0,0 +1,311 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static com.github.play.widget.SongArtWrapper.ART_FOLDER;
+import static com.github.play.widget.SongArtWrapper.ART_SUFFIX;
+import static com.github.play.widget.SongArtWrapper.ART_VERSION;
+import static com.github.play.widget.SongArtWrapper.METADATA_SUFFIX;
+import static com.github.play.widget.SongArtWrapper.TEMP_SUFFIX;
+import android.content.Context;
+import android.util.Log;
+
+import com.github.play.core.ArtMetadata;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Job that maintains the art cache on disk
+ * <p>
+ * The job runs once per process in the background lane of the art queue, so
+ * it never competes with loading art for views, and again whenever art is
+ * warmed up while the device is charging. It deletes art from previous
+ * {@link SongArtWrapper#ART_VERSION} directories, removes empty files and
+ * evicts the least recently used art when the cache exceeds its size limit
+ * along with the metadata of evicted art.
+ */
+public class ArtCacheMaintenance implements Runnable {
+
+	/**
+	 * Statistics about the art cached on disk
+	 */
+	public static class Stats {
+
+		/**
+		 * Upper bounds of the buckets in {@link #ages} and {@link #lastUsed}
+		 */
+		public static final long[] AGE_LIMITS = new long[] { DAY, 7 * DAY,
+				30 * DAY, Long.MAX_VALUE };
+
+		/**
+		 * Total size in bytes
+		 */
+		public final long size;
+
+		/**
+		 * Number of art files
+		 */
+		public final int files;
+
+		/**
+		 * Number of files in each bucket of {@link #AGE_LIMITS} by the time
+		 * since the art was downloaded or last revalidated
+		 */
+		public final int[] ages;
+
+		/**
+		 * Number of files in each bucket of {@link #AGE_LIMITS} by the time
+		 * since the art was last loaded
+		 */
+		public final int[] lastUsed;
+
+		private Stats(final long size, final int files, final int[] ages,
+				final int[] lastUsed) {
+			this.size = size;
+			this.files = files;
+			this.ages = ages;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	private static final String TAG = "ArtCacheMaintenance";
+
+	private static final long DAY = 24 * 60 * 60 * 1000;
+
+	/**
+	 * Art file and the size and modification time it had when listed
+	 */
+	private static class CachedFile {
+
+		final File file;
+
+		final long length;
+
+		final long modified;
+
+		CachedFile(final File file, final long length, final long modified) {
+			this.file = file;
+			this.length = length;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * Maximum number of bytes of art to keep on disk
+	 */
+	public static final long MAX_SIZE = 20 * 1024 * 1024;
+
+	/**
+	 * Maintain the art cache of the context
+	 * <p>
+	 * This scans and deletes files and should not be called from the main
+	 * thread
+	 *
+	 * @param context
+	 */
+	public static void maintain(final Context context) {
+		new ArtCacheMaintenance(SongArtWrapper.getArtDirectory(context),
+				SongArtWrapper.getPack(context)).run();
+	}
+
+	/**
+	 * Get statistics about the art currently cached on disk
+	 * <p>
+	 * This scans the cache directory and should not be called from the main
+	 * thread
+	 *
+	 * @param context
+	 * @return stats
+	 */
+	public static Stats getStats(final Context context) {
+		return getStats(SongArtWrapper.getArtDirectory(context).listFiles());
+	}
+
+	private static Stats getStats(final File[] files) {
+		long size = 0;
+		int count = 0;
+		int[] ages = new int[Stats.AGE_LIMITS.length];
+		int[] lastUsed = new int[Stats.AGE_LIMITS.length];
+		if (files != null) {
+			long now = System.currentTimeMillis();
+			for (File file : files) {
+				if (!file.isFile())
+					continue;
+
+				size += file.length();
+				if (!file.getName().endsWith(ART_SUFFIX))
+					continue;
+
+				count++;
+				// Loading art touches the file so only the metadata knows when
+				// the art was fetched
+				ArtMetadata metadata = ArtMetadata.read(SongArtWrapper
+						.getMetadataFile(file));
+				long fetchedAt = file.lastModified();
+				if (metadata != null && metadata.fetchedAt > 0)
+					fetchedAt = metadata.fetchedAt;
+				count(ages, now - fetchedAt);
+				count(lastUsed, now - file.lastModified());
+			}
+		}
+		return new Stats(size, count, ages, lastUsed);
+	}
+
+	private static void count(final int[] buckets, final long age) {
+		for (int i = 0; i < buckets.length; i++)
+			if (age < Stats.AGE_LIMITS[i]) {
+				buckets[i]++;
+				break;
+			}
+	}
+
+	private final File artFolder;
+
+	private final ArtPack pack;
+
+	/**
+	 * Create maintenance job for art directory
+	 *
+	 * @param artFolder
+	 * @param pack
+	 *            imported art pack whose metadata is kept, may be null
+	 */
+	public ArtCacheMaintenance(final File artFolder, final ArtPack pack) {
+		this.artFolder = artFolder;
+		this.pack = pack;
+	}
+
+	/**
+	 * Delete file or directory include child files
+	 *
+	 * @param file
+	 */
+	private void delete(final File file) {
+		if (!file.exists())
+			return;
+
+		if (file.isDirectory()) {
+			Log.d(TAG, "Deleting art directory: " + file.getName());
+			File[] children = file.listFiles();
+			if (children != null)
+				for (File child : children)
+					delete(child);
+		}
+		file.delete();
+	}
+
+	/**
+	 * Delete art in directories of previous art versions
+	 */
+	private void deleteOldArt() {
+		File root = artFolder.getParentFile();
+		delete(new File(root, ART_FOLDER));
+		for (int i = 0; i < ART_VERSION; i++)
+			delete(new File(root, ART_FOLDER + i));
+	}
+
+	/**
+	 * Delete empty files, abandoned downloads and the least recently used files
+	 * over the maximum cache size
+	 */
+	private void trim() {
+		File[] files = artFolder.listFiles();
+		if (files == null)
+			return;
+
+		long abandoned = System.currentTimeMillis() - DAY;
+		long size = 0;
+		List<CachedFile> cached = new ArrayList<CachedFile>(files.length);
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				// Downloads in progress start empty and are never evicted
+				if (file.lastModified() < abandoned)
+					file.delete();
+				continue;
+			}
+
+			long length = file.length();
+			if (length == 0) {
+				file.delete();
+				continue;
+			}
+			size += length;
+			cached.add(new CachedFile(file, length, file.lastModified()));
+		}
+		if (size <= MAX_SIZE)
+			return;
+
+		// Sort by the times read above since loading art touches files while
+		// sorting and an inconsistent order breaks the sort
+		Collections.sort(cached, new Comparator<CachedFile>() {
+
+			public int compare(final CachedFile lhs, final CachedFile rhs) {
+				if (lhs.modified < rhs.modified)
+					return -1;
+				else if (lhs.modified > rhs.modified)
+					return 1;
+				else
+					return 0;
+			}
+		});
+		for (CachedFile file : cached) {
+			if (size <= MAX_SIZE)
+				break;
+
+			if (file.file.delete())
+				size -= file.length;
+		}
+	}
+
+	/**
+	 * Delete metadata files of art files that no longer exist and aren't in
+	 * the imported pack
+	 */
+	private void deleteOrphanedMetadata() {
+		String[] names = artFolder.list();
+		if (names == null)
+			return;
+
+		Set<String> art = new HashSet<String>(Arrays.asList(names));
+		for (String name : names)
+			if (name.endsWith(METADATA_SUFFIX)) {
+				String base = name.substring(0,
+						name.length() - METADATA_SUFFIX.length());
+				if (!art.contains(base + ART_SUFFIX)
+						&& (pack == null || !pack.contains(base)))
+					new File(artFolder, name).delete();
+			}
+	}
+
+	public void run() {
+		long start = System.currentTimeMillis();
+		deleteOldArt();
+		trim();
+		deleteOrphanedMetadata();
+
+		Stats stats = getStats(artFolder.listFiles());
+		Log.d(TAG, "Art cache maintained in "
+				+ (System.currentTimeMillis() - start) + "ms: " + stats.files
+				+ " files, " + stats.size + " bytes");
+	}
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.graphics.Bitmap.CompressFormat.JPEG;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapFactory.Options;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single file containing many album art images that is memory-mapped when
+ * read
+ * <p>
+ * The file starts with a header of the {@link #MAGIC} number, the
+ * {@link #VERSION} and the number of entries. The header is followed by an
+ * index of entries sorted by key, each entry being the 20 byte SHA-1 album
+ * key, the offset of the image data from the start of the file and the length
+ * of the image data. The encoded images follow the index.
+ * <p>
+ * Packs are exported from the art cache of a device that has already
+ * downloaded art so other devices can import it instead of downloading each
+ * image. Exported images are thumbnails re-encoded at display size rather
+ * than the originals in the cache.
+ */
+public class ArtPack {
+
+	/**
+	 * Art file being exported
+	 */
+	private static class Entry implements Comparable<Entry> {
+
+		private final byte[] key;
+
+		private final File file;
+
+		private long length;
+
+		private Entry(final byte[] key, final File file) {
+			this.key = key;
+			this.file = file;
+		}
+
+		public int compareTo(final Entry another) {
+			return compareKeys(key, another.key);
+		}
+	}
+
+	private static final String TAG = "ArtPack";
+
+	/**
+	 * Magic number at the start of every pack
+	 */
+	private static final int MAGIC = 0x504c4150;
+
+	/**
+	 * Version of the pack format
+	 */
+	private static final int VERSION = 1;
+
+	private static final int HEADER_LENGTH = 12;
+
+	private static final int KEY_LENGTH = 20;
+
+	private static final int ENTRY_LENGTH = KEY_LENGTH + 8;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Quality of exported thumbnails
+	 */
+	private static final int QUALITY = 85;
+
+	/**
+	 * Open pack in given file
+	 *
+	 * @param file
+	 * @return pack or null if the file doesn't exist or isn't a valid pack
+	 */
+	public static ArtPack open(final File file) {
+		if (!file.isFile())
+			return null;
+
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			FileChannel channel = input.getChannel();
+			MappedByteBuffer buffer = channel.map(READ_ONLY, 0, channel.size());
+			if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC
+					|| buffer.getInt(4) != VERSION) {
+				Log.d(TAG, "Ignoring invalid art pack " + file.getName());
+				return null;
+			}
+			int count = buffer.getInt(8);
+			if (count < 0
+					|| HEADER_LENGTH + (long) count * ENTRY_LENGTH > buffer
+							.limit()) {
+				Log.d(TAG, "Ignoring truncated art pack " + file.getName());
+				return null;
+			}
+			return new ArtPack(buffer, count);
+		} catch (IOException e) {
+			Log.d(TAG, "Opening art pack " + file.getName() + " failed", e);
+			return null;
+		} finally {
+			// The mapping remains valid after the file is closed
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+
+	/**
+	 * Export art in the given directory to a pack
+	 * <p>
+	 * Only files named with an album key are included. Each image is scaled
+	 * down to fit the given size and re-encoded so the pack holds thumbnails
+	 * instead of the originals cached on disk.
+	 *
+	 * @param artFolder
+	 * @param pack
+	 * @param size
+	 *            maximum width and height of exported images in pixels
+	 * @return number of images exported
+	 * @throws IOException
+	 */
+	public static int export(final File artFolder, final File pack,
+			final int size) throws IOException {
+		File[] files = artFolder.listFiles();
+		List<Entry> entries = new ArrayList<Entry>();
+		if (files != null)
+			for (File file : files) {
+				byte[] key = toKey(file);
+				if (key != null)
+					entries.add(new Entry(key, file));
+			}
+		Collections.sort(entries);
+
+		// Thumbnails are written to a separate file first since the index
+		// requires their lengths
+		File images = new File(pack.getParentFile(), pack.getName()
+				+ ".images" + SongArtWrapper.TEMP_SUFFIX);
+		File temp = new File(pack.getParentFile(), pack.getName()
+				+ SongArtWrapper.TEMP_SUFFIX);
+		try {
+			List<Entry> exported = writeThumbnails(entries, size, images);
+			writePack(exported, images, temp);
+			if (!temp.renameTo(pack))
+				throw new IOException("Moving art pack to " + pack + " failed");
+			return exported.size();
+		} finally {
+			images.delete();
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Write thumbnails of entries to the given file
+	 *
+	 * @param entries
+	 * @param size
+	 * @param file
+	 * @return entries written with their lengths set
+	 * @throws IOException
+	 */
+	private static List<Entry> writeThumbnails(final List<Entry> entries,
+			final int size, final File file) throws IOException {
+		List<Entry> written = new ArrayList<Entry>(entries.size());
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(
+				file), BUFFER_SIZE);
+		try {
+			ByteArrayOutputStream image = new ByteArrayOutputStream(
+					BUFFER_SIZE);
+			for (Entry entry : entries) {
+				image.reset();
+				if (!writeThumbnail(entry.file, size, image))
+					continue;
+
+				image.writeTo(output);
+				entry.length = image.size();
+				written.add(entry);
+			}
+		} finally {
+			output.close();
+		}
+		return written;
+	}
+
+	/**
+	 * Write thumbnail of art file scaled down to fit the given size
+	 *
+	 * @param file
+	 * @param size
+	 * @param output
+	 * @return true if written, false if the file couldn't be decoded
+	 */
+	private static boolean writeThumbnail(final File file, final int size,
+			final OutputStream output) {
+		Options bounds = new Options();
+		bounds.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+
+		int width = bounds.outWidth;
+		int height = bounds.outHeight;
+		int scale = 1;
+		while (width / 2 >= size && height / 2 >= size) {
+			width /= 2;
+			height /= 2;
+			scale *= 2;
+		}
+		Options options = new Options();
+		options.inSampleSize = scale;
+		Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(),
+				options);
+		if (bitmap == null) {
+			Log.d(TAG, "Decoding " + file.getName() + " failed");
+			return false;
+		}
+
+		int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+		if (largest > size) {
+			Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+					Math.max(1, bitmap.getWidth() * size / largest),
+					Math.max(1, bitmap.getHeight() * size / largest), true);
+			if (scaled != bitmap) {
+				bitmap.recycle();
+				bitmap = scaled;
+			}
+		}
+		boolean written = bitmap.compress(JPEG, QUALITY, output);
+		bitmap.recycle();
+		return written;
+	}
+
+	/**
+	 * Write header, index and images of entries to the given file
+	 *
+	 * @param entries
+	 * @param images
+	 *            file containing the images of all entries in order
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void writePack(final List<Entry> entries,
+			final File images, final File file) throws IOException {
+		int count = entries.size();
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file),
+						BUFFER_SIZE));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(count);
+			long offset = HEADER_LENGTH + (long) count * ENTRY_LENGTH;
+			for (Entry entry : entries) {
+				output.write(entry.key);
+				output.writeInt((int) offset);
+				output.writeInt((int) entry.length);
+				offset += entry.length;
+			}
+			if (offset > Integer.MAX_VALUE)
+				throw new IOException("Art pack too large: " + offset);
+
+			copy(images, output, new byte[BUFFER_SIZE]);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Import pack from given file by copying it to the destination file
+	 *
+	 * @param source
+	 * @param destination
+	 * @return imported pack
+	 * @throws IOException
+	 */
+	public static ArtPack importPack(final File source, final File destination)
+			throws IOException {
+		if (open(source) == null)
+			throw new IOException(source + " is not a valid art pack");
+
+		File temp = new File(destination.getParentFile(),
+				destination.getName() + SongArtWrapper.TEMP_SUFFIX);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(
+				temp), BUFFER_SIZE);
+		try {
+			copy(source, output, new byte[BUFFER_SIZE]);
+		} catch (IOException e) {
+			output.close();
+			temp.delete();
+			throw e;
+		}
+		output.close();
+
+		if (!temp.renameTo(destination)) {
+			temp.delete();
+			throw new IOException("Moving art pack to " + destination
+					+ " failed");
+		}
+		return open(destination);
+	}
+
+	private static void copy(final File file, final OutputStream output,
+			final byte[] buffer) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				output.write(buffer, 0, read);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Convert the name of an art file to a key
+	 *
+	 * @param file
+	 * @return key or null if the file isn't named with a key
+	 */
+	private static byte[] toKey(final File file) {
+		String name = file.getName();
+		if (name.length() != KEY_LENGTH * 2
+				+ SongArtWrapper.ART_SUFFIX.length()
+				|| !name.endsWith(SongArtWrapper.ART_SUFFIX)
+				|| !file.isFile() || file.length() == 0)
+			return null;
+		return toKey(name);
+	}
+
+	/**
+	 * Convert hex key to bytes
+	 *
+	 * @param hex
+	 * @return key or null if not a valid hex key
+	 */
+	private static byte[] toKey(final String hex) {
+		if (hex.length() < KEY_LENGTH * 2)
+			return null;
+
+		byte[] key = new byte[KEY_LENGTH];
+		for (int i = 0; i < KEY_LENGTH; i++) {
+			int high = Character.digit(hex.charAt(i * 2), 16);
+			int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (high == -1 || low == -1)
+				return null;
+			key[i] = (byte) ((high << 4) | low);
+		}
+		return key;
+	}
+
+	private static int compareKeys(final byte[] lhs, final byte[] rhs) {
+		for (int i = 0; i < KEY_LENGTH; i++) {
+			int diff = (lhs[i] & 0xFF) - (rhs[i] & 0xFF);
+			if (diff != 0)
+				return diff;
+		}
+		return 0;
+	}
+
+	private final MappedByteBuffer buffer;
+
+	private final int count;
+
+	private ArtPack(final MappedByteBuffer buffer, final int count) {
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+	/**
+	 * Get number of images in pack
+	 *
+	 * @return count
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Does pack contain an image for album key?
+	 *
+	 * @param hexKey
+	 * @return true if contained, false otherwise
+	 */
+	public boolean contains(final String hexKey) {
+		return find(hexKey) != -1;
+	}
+
+	/**
+	 * Get encoded image for album key
+	 *
+	 * @param hexKey
+	 * @return image data or null if not in pack
+	 */
+	public byte[] get(final String hexKey) {
+		int entry = find(hexKey);
+		if (entry == -1)
+			return null;
+
+		return read(buffer.getInt(entry + KEY_LENGTH),
+				buffer.getInt(entry + KEY_LENGTH + 4));
+	}
+
+	/**
+	 * Find index entry for album key
+	 *
+	 * @param hexKey
+	 * @return offset of entry or -1 if not in pack
+	 */
+	private int find(final String hexKey) {
+		byte[] key = toKey(hexKey);
+		if (key == null)
+			return -1;
+
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int entry = HEADER_LENGTH + middle * ENTRY_LENGTH;
+			int diff = compare(entry, key);
+			if (diff < 0)
+				low = middle + 1;
+			else if (diff > 0)
+				high = middle - 1;
+			else
+				return entry;
+		}
+		return -1;
+	}
+
+	private int compare(final int entry, final byte[] key) {
+		for (int i = 0; i < KEY_LENGTH; i++) {
+			int diff = (buffer.get(entry + i) & 0xFF) - (key[i] & 0xFF);
+			if (diff != 0)
+				return diff;
+		}
+		return 0;
+	}
+
+	private byte[] read(final int offset, final int length) {
+		if (offset < 0 || length <= 0 || offset + length > buffer.limit())
+			return null;
+
+		// Duplicate so concurrent reads don't share a position
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset);
+		byte[] image = new byte[length];
+		data.get(image);
+		return image;
+	}
+}
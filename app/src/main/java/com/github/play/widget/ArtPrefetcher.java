@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.content.Context.CONNECTIVITY_SERVICE;
+import static android.net.ConnectivityManager.TYPE_ETHERNET;
+import static android.net.ConnectivityManager.TYPE_WIFI;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.github.play.core.PlayService;
+import com.github.play.core.Song;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prefetches art for the currently playing song and the songs queued to play
+ * next so it is available before it is displayed
+ * <p>
+ * Art is only downloaded when connected to an unmetered network, otherwise
+ * only art already on disk is loaded into memory.
+ */
+public class ArtPrefetcher {
+
+	/**
+	 * Number of queued songs to prefetch art for
+	 */
+	private static final int PREFETCH_COUNT = 5;
+
+	/**
+	 * Is the active network connection unmetered?
+	 *
+	 * @param context
+	 * @return true if connected to Wi-Fi or Ethernet, false otherwise
+	 */
+	public static boolean isUnmetered(final Context context) {
+		ConnectivityManager manager = (ConnectivityManager) context
+				.getSystemService(CONNECTIVITY_SERVICE);
+		NetworkInfo info = manager.getActiveNetworkInfo();
+		if (info == null || !info.isConnected())
+			return false;
+
+		int type = info.getType();
+		return type == TYPE_WIFI || type == TYPE_ETHERNET;
+	}
+
+	private final Context context;
+
+	private final AtomicReference<PlayService> service;
+
+	private final SongArtWrapper art;
+
+	/**
+	 * Create prefetcher
+	 *
+	 * @param context
+	 * @param service
+	 */
+	public ArtPrefetcher(final Context context,
+			final AtomicReference<PlayService> service) {
+		this.context = context;
+		this.service = service;
+		art = new SongArtWrapper(context, service);
+	}
+
+	/**
+	 * Prefetch art for the playing song and the next queued songs
+	 *
+	 * @param playing
+	 * @param queued
+	 */
+	public void prefetch(final Song playing, final Song[] queued) {
+		KnownSongs known = KnownSongs.get(context);
+		known.add(playing);
+		known.add(queued);
+
+		boolean download = service.get() != null && isUnmetered(context);
+
+		art.prefetch(playing, download);
+		if (queued == null || queued.length == 0)
+			return;
+
+		int count = Math.min(PREFETCH_COUNT, queued.length);
+		for (int i = 0; i < count; i++)
+			art.prefetch(queued[i], download);
+
+		// Next song will be displayed as playing once the queue advances
+		art.loadNotificationArt(queued[0], download, null);
+	}
+
+	/**
+	 * Load notification art for song in the background
+	 *
+	 * @param song
+	 * @param callback
+	 *            run on the main thread when art was loaded, may be null
+	 */
+	public void prefetchNotificationArt(final Song song,
+			final Runnable callback) {
+		boolean download = service.get() != null && isUnmetered(context);
+		art.loadNotificationArt(song, download, callback);
+	}
+}
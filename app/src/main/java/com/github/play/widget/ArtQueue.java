@@ -0,0 +1,298 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue of art requests that processes the most recently added request first
+ * <p>
+ * Requests are keyed by the {@link ImageView} they will be displayed in so
+ * binding a view to a different song cancels the request for the song the
+ * view was previously bound to before it ever reaches the network.
+ * <p>
+ * Background requests such as prefetching are only run when no requests for
+ * views are queued.
+ * <p>
+ * Requests for views reference their view until they complete so requests
+ * for the views of a destroyed activity must be cancelled with
+ * {@link #cancel(Context)}.
+ */
+public class ArtQueue {
+
+	/**
+	 * Request for art that can be cancelled until it completes
+	 */
+	public static abstract class Request implements Runnable {
+
+		private ImageView view;
+
+		private String key;
+
+		private volatile boolean cancelled;
+
+		/**
+		 * Has this request been cancelled?
+		 *
+		 * @return true if cancelled, false otherwise
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Can this request be run now?
+		 * <p>
+		 * Requests that are not ready stay queued until {@link ArtQueue#wake()}
+		 * is called
+		 *
+		 * @return true if ready, false otherwise
+		 */
+		protected boolean isReady() {
+			return true;
+		}
+	}
+
+	private static final String TAG = "ArtQueue";
+
+	private static final int MAX_BACKGROUND = 50;
+
+	private final List<Request> requests = new ArrayList<Request>();
+
+	private final List<Request> backgroundRequests = new ArrayList<Request>();
+
+	private final Map<String, Request> keyRequests = new HashMap<String, Request>();
+
+	private int threads;
+
+	private int running;
+
+	private final Map<ImageView, Request> viewRequests = new HashMap<ImageView, Request>();
+
+	private final Runnable worker = new Runnable() {
+
+		public void run() {
+			Process.setThreadPriority(THREAD_PRIORITY_BACKGROUND);
+			while (true) {
+				Request request;
+				try {
+					request = take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (request == null)
+					return;
+
+				if (request.isCancelled()) {
+					finish(request);
+					continue;
+				}
+
+				try {
+					request.run();
+				} catch (RuntimeException e) {
+					Log.d(TAG, "Art request failed", e);
+				} finally {
+					finish(request);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Create queue processed by given number of threads
+	 *
+	 * @param threads
+	 */
+	public ArtQueue(final int threads) {
+		setThreads(threads);
+	}
+
+	/**
+	 * Set number of threads processing this queue
+	 * <p>
+	 * Threads above the new count exit once they finish their current request
+	 *
+	 * @param threads
+	 * @return this queue
+	 */
+	public ArtQueue setThreads(final int threads) {
+		synchronized (requests) {
+			this.threads = threads;
+			while (running < threads) {
+				running++;
+				Thread thread = new Thread(worker, "Art " + running);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			requests.notifyAll();
+		}
+		return this;
+	}
+
+	/**
+	 * Take next request to run
+	 *
+	 * @return request or null if the calling thread should exit
+	 * @throws InterruptedException
+	 */
+	private Request take() throws InterruptedException {
+		synchronized (requests) {
+			while (true) {
+				if (running > threads) {
+					running--;
+					return null;
+				}
+
+				for (int i = requests.size() - 1; i >= 0; i--) {
+					Request request = requests.get(i);
+					if (!request.isReady())
+						continue;
+
+					requests.remove(i);
+					return request;
+				}
+
+				if (requests.isEmpty() && !backgroundRequests.isEmpty()) {
+					Request request = backgroundRequests.remove(0);
+					keyRequests.remove(request.key);
+					return request;
+				}
+
+				requests.wait();
+			}
+		}
+	}
+
+	private void finish(final Request request) {
+		synchronized (requests) {
+			if (request.view != null
+					&& viewRequests.get(request.view) == request)
+				viewRequests.remove(request.view);
+		}
+	}
+
+	/**
+	 * Add request for art to display in the given view
+	 * <p>
+	 * Any request still pending or running for the view is cancelled
+	 *
+	 * @param view
+	 * @param request
+	 * @return this queue
+	 */
+	public ArtQueue add(final ImageView view, final Request request) {
+		synchronized (requests) {
+			cancel(view);
+			request.view = view;
+			viewRequests.put(view, request);
+			requests.add(request);
+			requests.notifyAll();
+		}
+		return this;
+	}
+
+	/**
+	 * Add background request identified by the given key
+	 * <p>
+	 * Background requests run in the order they were added and only when no
+	 * requests for views are queued. The request is ignored if a background
+	 * request with the same key is already queued.
+	 *
+	 * @param key
+	 * @param request
+	 * @return this queue
+	 */
+	public ArtQueue addBackground(final String key, final Request request) {
+		synchronized (requests) {
+			if (keyRequests.containsKey(key))
+				return this;
+
+			if (backgroundRequests.size() >= MAX_BACKGROUND) {
+				Request oldest = backgroundRequests.remove(0);
+				oldest.cancelled = true;
+				keyRequests.remove(oldest.key);
+			}
+
+			request.key = key;
+			keyRequests.put(key, request);
+			backgroundRequests.add(request);
+			requests.notifyAll();
+		}
+		return this;
+	}
+
+	/**
+	 * Cancel request for art to display in the given view
+	 *
+	 * @param view
+	 * @return this queue
+	 */
+	public ArtQueue cancel(final ImageView view) {
+		synchronized (requests) {
+			Request request = viewRequests.remove(view);
+			if (request != null) {
+				request.cancelled = true;
+				requests.remove(request);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Cancel all requests for art to display in views of the given context
+	 *
+	 * @param context
+	 * @return this queue
+	 */
+	public ArtQueue cancel(final Context context) {
+		synchronized (requests) {
+			Iterator<Request> iterator = viewRequests.values().iterator();
+			while (iterator.hasNext()) {
+				Request request = iterator.next();
+				if (request.view.getContext() != context)
+					continue;
+
+				iterator.remove();
+				request.cancelled = true;
+				requests.remove(request);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Wake threads waiting on requests that were not previously ready
+	 *
+	 * @return this queue
+	 */
+	public ArtQueue wake() {
+		synchronized (requests) {
+			requests.notifyAll();
+		}
+		return this;
+	}
+}
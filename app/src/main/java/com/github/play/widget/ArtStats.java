@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import com.github.play.core.TimingStats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters and timings of loading album art
+ * <p>
+ * Requests for displayed views, notifications and background loads such as
+ * prefetching, warm up and revalidation are counted separately so background
+ * work doesn't inflate the hit rates of displayed art
+ */
+public class ArtStats {
+
+	/**
+	 * Counters of where requested art was found
+	 */
+	public static class Counters {
+
+		/**
+		 * Art found decoded in memory
+		 */
+		public final AtomicInteger memoryHits = new AtomicInteger();
+
+		/**
+		 * Art found in the imported art pack
+		 */
+		public final AtomicInteger packHits = new AtomicInteger();
+
+		/**
+		 * Art found in the disk cache
+		 */
+		public final AtomicInteger diskHits = new AtomicInteger();
+
+		/**
+		 * Art requested from the server
+		 */
+		public final AtomicInteger networkFetches = new AtomicInteger();
+
+		/**
+		 * Art requests avoided because the art is known to be missing
+		 */
+		public final AtomicInteger negativeHits = new AtomicInteger();
+
+		/**
+		 * Art requests that failed or found no art
+		 */
+		public final AtomicInteger networkFailures = new AtomicInteger();
+
+		private final String name;
+
+		private Counters(final String name) {
+			this.name = name;
+		}
+
+		private void append(final StringBuilder text) {
+			int memory = memoryHits.get();
+			int pack = packHits.get();
+			int disk = diskHits.get();
+			int network = networkFetches.get();
+			int negative = negativeHits.get();
+			int total = memory + pack + disk + network + negative;
+
+			text.append("  ").append(name).append(": ").append(total)
+					.append(" requests\n");
+			text.append("    Memory hits: ").append(memory).append(" (")
+					.append(rate(memory, total)).append(")\n");
+			text.append("    Pack hits: ").append(pack).append(" (")
+					.append(rate(pack, total)).append(")\n");
+			text.append("    Disk hits: ").append(disk).append(" (")
+					.append(rate(disk, total)).append(")\n");
+			text.append("    Network fetches: ").append(network).append(" (")
+					.append(rate(network, total)).append("), ")
+					.append(networkFailures.get()).append(" failed\n");
+			text.append("    Negative hits: ").append(negative).append(" (")
+					.append(rate(negative, total)).append(")\n");
+		}
+
+		private void reset() {
+			memoryHits.set(0);
+			packHits.set(0);
+			diskHits.set(0);
+			networkFetches.set(0);
+			negativeHits.set(0);
+			networkFailures.set(0);
+		}
+	}
+
+	/**
+	 * Requests for art displayed in views, each counted once
+	 */
+	public static final Counters VIEWS = new Counters("Views");
+
+	/**
+	 * Requests for art displayed in notifications
+	 */
+	public static final Counters NOTIFICATIONS = new Counters("Notifications");
+
+	/**
+	 * Prefetching, warm up and revalidation requests
+	 */
+	public static final Counters BACKGROUND = new Counters("Background");
+
+	/**
+	 * Time to decode art into a bitmap
+	 */
+	public static final TimingStats DECODE = new TimingStats();
+
+	/**
+	 * Time to download art
+	 */
+	public static final TimingStats DOWNLOAD = new TimingStats();
+
+	/**
+	 * Time a placeholder was displayed before the art replaced it
+	 */
+	public static final TimingStats PLACEHOLDER = new TimingStats();
+
+	private static String rate(final int hits, final int total) {
+		if (total == 0)
+			return "0%";
+		return Math.round(100F * hits / total) + "%";
+	}
+
+	/**
+	 * Get number of art requests avoided because the art was known to be
+	 * missing
+	 *
+	 * @return count
+	 */
+	public static int getNegativeHits() {
+		return VIEWS.negativeHits.get() + NOTIFICATIONS.negativeHits.get()
+				+ BACKGROUND.negativeHits.get();
+	}
+
+	/**
+	 * Append stats as text
+	 *
+	 * @param text
+	 */
+	public static void append(final StringBuilder text) {
+		VIEWS.append(text);
+		NOTIFICATIONS.append(text);
+		BACKGROUND.append(text);
+		text.append("  Decode: ").append(DECODE).append('\n');
+		text.append("  Download: ").append(DOWNLOAD).append('\n');
+		text.append("  Placeholder: ").append(PLACEHOLDER).append('\n');
+	}
+
+	/**
+	 * Reset all stats
+	 */
+	public static void reset() {
+		VIEWS.reset();
+		NOTIFICATIONS.reset();
+		BACKGROUND.reset();
+		DECODE.reset();
+		DOWNLOAD.reset();
+		PLACEHOLDER.reset();
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.content.Context.ACTIVITY_SERVICE;
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
+import android.app.ActivityManager;
+import android.app.ActivityManager.MemoryInfo;
+import android.content.Context;
+import android.graphics.Bitmap.Config;
+
+/**
+ * Memory tier that album art is decoded and cached for
+ */
+public enum ArtTier {
+
+	/**
+	 * Devices with a normal amount of memory available
+	 */
+	NORMAL(ARGB_8888, 50, 30, 2),
+
+	/**
+	 * Low memory devices or any device while memory is low
+	 * <p>
+	 * Album art is opaque so decoding without an alpha channel halves the
+	 * memory used by each bitmap
+	 */
+	LOW(RGB_565, 20, 12, 1);
+
+	/**
+	 * Largest per-application heap in megabytes that is considered low memory
+	 */
+	private static final int LOW_MEMORY_CLASS = 32;
+
+	/**
+	 * Detect tier for the current memory state of the device
+	 *
+	 * @param context
+	 * @return tier
+	 */
+	public static ArtTier detect(final Context context) {
+		ActivityManager manager = (ActivityManager) context
+				.getSystemService(ACTIVITY_SERVICE);
+		if (manager.getMemoryClass() <= LOW_MEMORY_CLASS)
+			return LOW;
+
+		MemoryInfo info = new MemoryInfo();
+		manager.getMemoryInfo(info);
+		return info.lowMemory ? LOW : NORMAL;
+	}
+
+	/**
+	 * Bitmap configuration to decode art with
+	 */
+	public final Config config;
+
+	/**
+	 * Maximum number of decoded albums to keep in memory
+	 */
+	public final int maxRecent;
+
+	/**
+	 * Maximum number of drawables wrapping decoded albums to keep in memory
+	 * for each kind of drawable
+	 */
+	public final int maxDrawables;
+
+	/**
+	 * Number of threads loading art
+	 */
+	public final int threads;
+
+	private ArtTier(final Config config, final int maxRecent,
+			final int maxDrawables, final int threads) {
+		this.config = config;
+		this.maxRecent = maxRecent;
+		this.maxDrawables = maxDrawables;
+		this.threads = threads;
+	}
+}
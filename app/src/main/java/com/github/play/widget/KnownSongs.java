@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import android.content.Context;
+import android.util.Log;
+
+import com.github.play.core.CacheRegistry;
+import com.github.play.core.Song;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Store of one song for each album the application has displayed
+ * <p>
+ * Songs are recorded from the queue, searches and artist and album pages so
+ * art for their albums can be downloaded ahead of time while the device is
+ * idle. Albums are kept in the order they were first seen
+ * and the oldest are dropped once {@link #MAX_ALBUMS} is exceeded.
+ */
+public class KnownSongs {
+
+	private static final String TAG = "KnownSongs";
+
+	private static final String FILE = "known-songs";
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum number of albums to remember
+	 */
+	private static final int MAX_ALBUMS = 5000;
+
+	private static KnownSongs instance;
+
+	/**
+	 * Get store for context
+	 *
+	 * @param context
+	 * @return store
+	 */
+	public static synchronized KnownSongs get(final Context context) {
+		if (instance == null)
+			instance = new KnownSongs(new File(context.getApplicationContext()
+					.getFilesDir(), FILE));
+		return instance;
+	}
+
+	private final File file;
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+	/**
+	 * Map of album ids to songs from that album
+	 * <p>
+	 * Loaded lazily on first access off the main thread and guarded by this
+	 * store
+	 */
+	private Map<String, Song> songs;
+
+	private KnownSongs(final File file) {
+		this.file = file;
+
+		CacheRegistry.register(new CacheRegistry.Cache() {
+
+			public void trim(final int level) {
+				// Songs are reloaded from disk when next needed
+				if (level >= TRIM_MEMORY_BACKGROUND)
+					writer.execute(new Runnable() {
+
+						public void run() {
+							synchronized (KnownSongs.this) {
+								songs = null;
+							}
+						}
+					});
+			}
+		});
+	}
+
+	private Map<String, Song> getSongs() {
+		if (songs == null) {
+			songs = new LinkedHashMap<String, Song>() {
+
+				private static final long serialVersionUID = 1853316545428006452L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Song> eldest) {
+					return size() > MAX_ALBUMS;
+				}
+			};
+			read(songs);
+		}
+		return songs;
+	}
+
+	private static String readString(final DataInputStream input)
+			throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	private static void writeString(final DataOutputStream output,
+			final String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null)
+			output.writeUTF(value);
+	}
+
+	private void read(final Map<String, Song> songs) {
+		if (!file.isFile())
+			return;
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (input.readInt() != VERSION)
+				return;
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Song song = new Song(input.readUTF(), null,
+						readString(input), readString(input), false, 0);
+				songs.put(song.getAlbumId(), song);
+			}
+		} catch (EOFException e) {
+			Log.d(TAG, "Known songs truncated after " + songs.size());
+		} catch (IOException e) {
+			Log.d(TAG, "Reading known songs failed", e);
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+
+	private void write() {
+		List<Song> snapshot = getAll();
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)));
+			output.writeInt(VERSION);
+			output.writeInt(snapshot.size());
+			for (Song song : snapshot) {
+				output.writeUTF(song.id);
+				writeString(output, song.artist);
+				writeString(output, song.album);
+			}
+			output.close();
+			output = null;
+			if (!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			Log.d(TAG, "Writing known songs failed", e);
+			temp.delete();
+		} finally {
+			if (output != null)
+				try {
+					output.close();
+				} catch (IOException ignored) {
+					// Ignored
+				}
+		}
+	}
+
+	/**
+	 * Record songs as known
+	 * <p>
+	 * Songs are merged and new albums are written to disk in the background
+	 *
+	 * @param added
+	 *            may be null or contain null songs
+	 */
+	public void add(final Song... added) {
+		if (added == null || added.length == 0)
+			return;
+
+		writer.execute(new Runnable() {
+
+			public void run() {
+				boolean changed = false;
+				synchronized (KnownSongs.this) {
+					Map<String, Song> songs = getSongs();
+					for (Song song : added)
+						if (song != null && song.id != null
+								&& !songs.containsKey(song.getAlbumId())) {
+							songs.put(song.getAlbumId(), song);
+							changed = true;
+						}
+				}
+				if (changed)
+					write();
+			}
+		});
+	}
+
+	/**
+	 * Get snapshot of known songs in the order their albums were first seen
+	 *
+	 * @return songs
+	 */
+	public synchronized List<Song> getAll() {
+		return new ArrayList<Song>(getSongs().values());
+	}
+}
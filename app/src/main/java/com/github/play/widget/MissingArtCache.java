@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.play.widget;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.Context.MODE_PRIVATE;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+
+import com.github.play.core.CacheRegistry;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of albums the server has no art for
+ * <p>
+ * Albums are remembered for {@link #TTL} so scrolling past them doesn't
+ * request their art again. Entries are persisted in shared preferences so they
+ * survive restarts.
+ */
+public class MissingArtCache {
+
+	/**
+	 * Time in milliseconds that art is considered missing for
+	 */
+	public static final long TTL = 24 * 60 * 60 * 1000;
+
+	private static MissingArtCache instance;
+
+	/**
+	 * Get cache for context
+	 *
+	 * @param context
+	 * @return cache
+	 */
+	public static synchronized MissingArtCache get(final Context context) {
+		if (instance == null)
+			instance = new MissingArtCache(context.getApplicationContext()
+					.getSharedPreferences("missing-art", MODE_PRIVATE));
+		return instance;
+	}
+
+	private final SharedPreferences preferences;
+
+	/**
+	 * Map of album keys to the time their entry expires
+	 * <p>
+	 * Loaded lazily from the preferences and released on memory pressure
+	 */
+	private volatile Map<String, Long> expirations;
+
+	private MissingArtCache(final SharedPreferences preferences) {
+		this.preferences = preferences;
+
+		CacheRegistry.register(new CacheRegistry.Cache() {
+
+			public void trim(final int level) {
+				// Entries are reloaded from the preferences when next needed
+				if (level >= TRIM_MEMORY_BACKGROUND)
+					expirations = null;
+			}
+		});
+	}
+
+	private Map<String, Long> getExpirations() {
+		Map<String, Long> loaded = expirations;
+		if (loaded != null)
+			return loaded;
+
+		synchronized (this) {
+			if (expirations == null)
+				expirations = load();
+			return expirations;
+		}
+	}
+
+	/**
+	 * Load entries from the preferences, removing expired entries
+	 *
+	 * @return map of album keys to the time their entry expires
+	 */
+	private Map<String, Long> load() {
+		Map<String, Long> loaded = new ConcurrentHashMap<String, Long>();
+		long now = System.currentTimeMillis();
+		Editor editor = null;
+		for (Entry<String, ?> entry : preferences.getAll().entrySet()) {
+			Object expiration = entry.getValue();
+			if (expiration instanceof Long && (Long) expiration > now)
+				loaded.put(entry.getKey(), (Long) expiration);
+			else {
+				if (editor == null)
+					editor = preferences.edit();
+				editor.remove(entry.getKey());
+			}
+		}
+		if (editor != null)
+			editor.commit();
+		return loaded;
+	}
+
+	/**
+	 * Is art known to be missing for the album key?
+	 *
+	 * @param key
+	 * @return true if missing, false if unknown
+	 */
+	public boolean isMissing(final String key) {
+		Long expiration = getExpirations().get(key);
+		if (expiration == null)
+			return false;
+
+		if (expiration > System.currentTimeMillis())
+			return true;
+
+		remove(key);
+		return false;
+	}
+
+	/**
+	 * Remember that art is missing for the album key
+	 * <p>
+	 * This writes to disk and should not be called from the main thread
+	 *
+	 * @param key
+	 */
+	public void add(final String key) {
+		long expiration = System.currentTimeMillis() + TTL;
+		getExpirations().put(key, expiration);
+		preferences.edit().putLong(key, expiration).commit();
+	}
+
+	/**
+	 * Forget that art is missing for the album key
+	 *
+	 * @param key
+	 */
+	public void remove(final String key) {
+		if (getExpirations().remove(key) != null)
+			preferences.edit().remove(key).commit();
+	}
+
+	/**
+	 * Get number of albums currently known to be missing art
+	 *
+	 * @return count
+	 */
+	public int size() {
+		return getExpirations().size();
+	}
+}
@@ -17,11 +17,13 @@ package com.github.play.widget;
 
 import android.app.Activity;
 import android.view.View;
+import android.widget.AbsListView.OnScrollListener;
 
 import com.github.kevinsawicki.wishlist.SingleTypeAdapter;
 import com.github.play.R.drawable;
 import com.github.play.R.id;
 import com.github.play.core.PlayService;
+import com.github.play.core.QueueDelta;
 import com.github.play.core.Song;
 
 import java.util.concurrent.atomic.AtomicReference;
@@ -33,6 +35,13 @@ public class PlayListAdapter extends SingleTypeAdapter<Song> {
 
 	private final SongArtWrapper albumArt;
 
+	private Song[] songs = new Song[0];
+
+	/**
+	 * Version of the displayed songs or -1 if unknown
+	 */
+	private long version = -1;
+
 	/**
 	 * @param activity
 	 * @param viewId
@@ -45,6 +54,60 @@ public class PlayListAdapter extends SingleTypeAdapter<Song> {
 		albumArt = new SongArtWrapper(activity, service);
 	}
 
+	/**
+	 * Get listener that pauses loading art while the list is flung
+	 *
+	 * @return scroll listener
+	 */
+	public OnScrollListener getScrollListener() {
+		return albumArt;
+	}
+
+	/**
+	 * Set queued songs
+	 *
+	 * @param songs
+	 * @param version
+	 *            of the queue from {@link QueueDelta#version} or -1 if
+	 *            unknown
+	 * @return this adapter
+	 */
+	public PlayListAdapter setSongs(final Song[] songs, final long version) {
+		this.songs = songs != null ? songs : new Song[0];
+		this.version = version;
+		setItems(this.songs);
+		return this;
+	}
+
+	/**
+	 * Get queued songs
+	 *
+	 * @return songs
+	 */
+	public Song[] getSongs() {
+		return songs;
+	}
+
+	/**
+	 * Apply delta to the queued songs
+	 * <p>
+	 * Songs kept by the delta are reused so their views and art stay as is
+	 *
+	 * @param delta
+	 * @return true if applied, false if the delta is for a different version
+	 *         than the one displayed
+	 */
+	public boolean apply(final QueueDelta delta) {
+		if (version == -1 || delta.baseVersion != version)
+			return false;
+
+		if (delta.isEmpty())
+			version = delta.version;
+		else
+			setSongs(delta.apply(songs), delta.version);
+		return true;
+	}
+
 	@Override
 	protected int[] getChildViewIds() {
 		return new int[] { id.tv_artist, id.tv_song, id.tv_album, id.iv_art };
@@ -19,6 +19,7 @@ import static com.github.kevinsawicki.wishlist.ViewUpdater.FORMAT_INT;
 import android.app.Activity;
 import android.util.SparseBooleanArray;
 import android.view.View;
+import android.widget.AbsListView.OnScrollListener;
 
 import com.github.kevinsawicki.wishlist.MultiTypeAdapter;
 import com.github.play.R.drawable;
@@ -65,6 +66,15 @@ public class SearchListAdapter extends MultiTypeAdapter {
 		selected = new SparseBooleanArray();
 	}
 
+	/**
+	 * Get listener that pauses loading art while the list is flung
+	 *
+	 * @return scroll listener
+	 */
+	public OnScrollListener getScrollListener() {
+		return albumArt;
+	}
+
 	/**
 	 * Set songs to display
 	 *
@@ -15,155 +15,524 @@
  */
 package com.github.play.widget;
 
-import static android.graphics.Bitmap.CompressFormat.PNG;
 import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.HONEYCOMB;
+import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
+import static android.os.Process.THREAD_PRIORITY_LOWEST;
 import static com.github.kevinsawicki.http.HttpRequest.CHARSET_UTF8;
-import android.app.Activity;
+import android.R.dimen;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.util.SparseArray;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.ImageView;
 
 import com.github.play.R.id;
+import com.github.play.core.ArtMetadata;
+import com.github.play.core.CacheRegistry;
+import com.github.play.core.PlayPreferences;
 import com.github.play.core.PlayService;
 import com.github.play.core.Song;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * View wrapper to load and display art for a {@link Song}
+ * <p>
+ * Set this wrapper as the {@link OnScrollListener} of the list it loads art
+ * for to pause loading while the list is being flung.
  */
-public class SongArtWrapper {
+public class SongArtWrapper implements OnScrollListener {
 
 	/**
-	 * Get cached art for song
+	 * Output stream that writes to two output streams
+	 */
+	private static class TeeOutputStream extends OutputStream {
+
+		private final OutputStream first;
+
+		private final OutputStream second;
+
+		private TeeOutputStream(final OutputStream first,
+				final OutputStream second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void write(int oneByte) throws IOException {
+			first.write(oneByte);
+			second.write(oneByte);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int count)
+				throws IOException {
+			first.write(buffer, offset, count);
+			second.write(buffer, offset, count);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			first.flush();
+			second.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				first.close();
+			} finally {
+				second.close();
+			}
+		}
+	}
+
+	/**
+	 * Get art for song sized for the large icon of a notification
+	 * <p>
+	 * Only art already in memory is returned so this never reads from disk,
+	 * use {@link #loadNotificationArt(Song, boolean, Runnable)} to load it
 	 *
-	 * @param context
 	 * @param song
-	 * @return art or null if not available locally
+	 * @return art or null if not loaded
 	 */
-	public static Bitmap getCachedArt(final Context context, final Song song) {
-		File file = getArtFile(getArtDirectory(context), song);
-		if (!isValid(file))
-			return null;
+	public static Bitmap getNotificationArt(final Song song) {
+		final String key = getKey(song);
+		return key != null ? NOTIFICATION_ART.get(key) : null;
+	}
 
-		Options options = new Options();
-		options.inDither = false;
-		options.inPreferredConfig = ARGB_8888;
-		Bitmap decoded = BitmapFactory.decodeFile(file.getAbsolutePath(),
-				options);
-		if (decoded == null)
-			Log.d(TAG, "Decoding " + file.getName() + " failed");
-		return decoded;
+	/**
+	 * Maintain the art cache on disk in the background lane of the art queue
+	 * if not done yet in this process
+	 * <p>
+	 * Maintenance runs at the lowest thread priority and only when no art is
+	 * being loaded for views. A request dropped from a full background lane
+	 * is added again by the next wrapper created.
+	 *
+	 * @param context
+	 */
+	private static void scheduleMaintenance(final Context context) {
+		if (MAINTAINED.get())
+			return;
+
+		final Context appContext = context.getApplicationContext();
+		QUEUE.addBackground("maintenance", new ArtQueue.Request() {
+
+			public void run() {
+				if (!MAINTAINED.compareAndSet(false, true))
+					return;
+
+				Process.setThreadPriority(THREAD_PRIORITY_LOWEST);
+				try {
+					ArtCacheMaintenance.maintain(appContext);
+				} finally {
+					Process.setThreadPriority(THREAD_PRIORITY_BACKGROUND);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancel all pending art requests for views of the given context
+	 * <p>
+	 * This must be called when an activity displaying art is destroyed so
+	 * requests queued while loading was paused don't keep it in memory
+	 *
+	 * @param context
+	 */
+	public static void cancel(final Context context) {
+		QUEUE.cancel(context);
+	}
+
+	/**
+	 * Get tier that art is currently decoded and cached for
+	 *
+	 * @return tier
+	 */
+	public static ArtTier getTier() {
+		return tier;
+	}
+
+	/**
+	 * Detect the tier of the device if not detected yet in this process
+	 *
+	 * @param context
+	 */
+	private static synchronized void detectTier(final Context context) {
+		if (deviceTier != null)
+			return;
+
+		deviceTier = ArtTier.detect(context);
+		updateTier();
+	}
+
+	/**
+	 * Use the low tier from now on regardless of the device tier
+	 */
+	private static synchronized void setMemoryLow() {
+		memoryLow = true;
+		updateTier();
+	}
+
+	/**
+	 * Switch to the tier of the device or the low tier once memory pressure
+	 * was reported
+	 */
+	private static synchronized void updateTier() {
+		setTier(memoryLow || deviceTier == null ? ArtTier.LOW : deviceTier);
+	}
+
+	/**
+	 * Set tier to decode and cache art for
+	 * <p>
+	 * Switching tiers trims the art cached in memory and changes the number of
+	 * threads loading art
+	 *
+	 * @param tier
+	 */
+	private static void setTier(final ArtTier tier) {
+		if (tier == SongArtWrapper.tier)
+			return;
+
+		Log.d(TAG, "Switching to " + tier + " art tier");
+		SongArtWrapper.tier = tier;
+		QUEUE.setThreads(tier.threads);
+		synchronized (RECENT_ART) {
+			trim(RECENT_ART, tier.maxRecent);
+			for (int i = 0; i < RECENT_DRAWABLES.size(); i++)
+				trim(RECENT_DRAWABLES.valueAt(i), tier.maxDrawables);
+		}
+	}
+
+	/**
+	 * Are drawables flattened into a single bitmap?
+	 *
+	 * @return true if flattened, false if drawn as layers
+	 */
+	public static boolean isFlattened() {
+		return flattened;
+	}
+
+	/**
+	 * Set whether the album art and its frame are flattened into a single
+	 * bitmap at display size
+	 * <p>
+	 * Flattened art draws a single bitmap and cache hits don't inflate a
+	 * layer drawable, at the cost of keeping the composited bitmap in memory
+	 * in addition to the decoded art
+	 *
+	 * @param flattened
+	 */
+	public static void setFlattened(final boolean flattened) {
+		if (flattened == SongArtWrapper.flattened)
+			return;
+
+		SongArtWrapper.flattened = flattened;
+		synchronized (RECENT_ART) {
+			RECENT_DRAWABLES.clear();
+		}
+	}
+
+	/**
+	 * Release art cached in memory for the given trim level
+	 * <p>
+	 * Art for lists and album keys are released once the UI is hidden,
+	 * everything is released when the process is likely to be killed or
+	 * memory is critically low. The low memory tier is used for the rest of
+	 * the process once memory pressure is first reported, creating wrappers
+	 * doesn't switch back to the tier of the device.
+	 *
+	 * @param level
+	 *            a {@code TRIM_MEMORY_*} constant of
+	 *            {@link android.content.ComponentCallbacks2}
+	 */
+	public static void trim(final int level) {
+		if (level >= TRIM_MEMORY_MODERATE
+				|| level == TRIM_MEMORY_RUNNING_CRITICAL) {
+			setMemoryLow();
+			synchronized (RECENT_ART) {
+				RECENT_ART.clear();
+				RECENT_DRAWABLES.clear();
+			}
+			NOTIFICATION_ART.evictAll();
+			EMPTY_ART.clear();
+			KEYS.evictAll();
+		} else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+			synchronized (RECENT_ART) {
+				trim(RECENT_ART, tier.maxRecent / 2);
+				RECENT_DRAWABLES.clear();
+			}
+			EMPTY_ART.clear();
+			KEYS.evictAll();
+		} else if (level >= TRIM_MEMORY_RUNNING_LOW)
+			setMemoryLow();
 	}
 
 	private static final String TAG = "SongArtWrapper";
 
-	private static final int DIGEST_LENGTH = 40;
+	static {
+		CacheRegistry.register(new CacheRegistry.Cache() {
+
+			public void trim(final int level) {
+				SongArtWrapper.trim(level);
+			}
+		});
+	}
 
-	private static final Executor EXECUTORS = Executors.newFixedThreadPool(1);
+	private static final ArtQueue QUEUE = new ArtQueue(1);
 
-	private static final int MAX_RECENT = 50;
+	/**
+	 * True once the art cache was maintained in this process
+	 */
+	private static final AtomicBoolean MAINTAINED = new AtomicBoolean();
 
 	private static final int MAX_SIZE_DP = 80;
 
-	private static final MessageDigest SHA1_DIGEST;
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Suffix of files art is downloaded to before being moved into place
+	 */
+	static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Suffix of art files
+	 */
+	static final String ART_SUFFIX = ".png";
+
+	/**
+	 * Suffix of files storing the {@link ArtMetadata} of art files
+	 */
+	static final String METADATA_SUFFIX = ".meta";
+
+	/**
+	 * Time after which art on disk is revalidated with the server
+	 */
+	private static final long REVALIDATE_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
 
-	private static final String ART_FOLDER = "art";
+	/**
+	 * Prefix of the folder art is stored in
+	 */
+	static final String ART_FOLDER = "art";
 
 	/**
 	 * Version of art to display
 	 * <p>
-	 * This counter should be incremented when {@link #MAX_SIZE_DP} changes or
-	 * if old art should be cleared and re-downloaded
+	 * This counter should be incremented when the format of art stored on disk
+	 * changes or if old art should be cleared and re-downloaded
 	 */
-	private static final int ART_VERSION = 1;
+	static final int ART_VERSION = 2;
 
-	static {
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("SHA-1");
-		} catch (NoSuchAlgorithmException e) {
-			digest = null;
-		}
-		SHA1_DIGEST = digest;
-	}
+	/**
+	 * Maximum number of album keys to remember
+	 */
+	private static final int MAX_KEYS = 512;
+
+	/**
+	 * Map of album ids to the keys used for caching album art, the least
+	 * recently used keys are forgotten first
+	 */
+	private static final LruCache<String, String> KEYS = new LruCache<String, String>(
+			MAX_KEYS);
+
+	private static final int MAX_NOTIFICATION_ART = 4;
 
-	private static final SparseArray<Map<String, Drawable>> RECENT_ART = new SparseArray<Map<String, Drawable>>(
+	private static final LruCache<String, Bitmap> NOTIFICATION_ART = new LruCache<String, Bitmap>(
+			MAX_NOTIFICATION_ART);
+
+	private static volatile ArtTier tier = ArtTier.LOW;
+
+	/**
+	 * Tier of the device, detected once per process
+	 * <p>
+	 * Access is guarded by this class
+	 */
+	private static ArtTier deviceTier;
+
+	/**
+	 * True once memory pressure was reported
+	 * <p>
+	 * Access is guarded by this class
+	 */
+	private static boolean memoryLow;
+
+	private static volatile boolean flattened;
+
+	/**
+	 * Map of album keys to decoded art shared by all drawables displaying it
+	 */
+	private static final Map<String, Bitmap> RECENT_ART = createCacheMap(false);
+
+	/**
+	 * Map of layer drawable ids to maps of album keys to drawables wrapping
+	 * art from {@link #RECENT_ART}
+	 * <p>
+	 * Access is guarded by {@link #RECENT_ART}
+	 */
+	private static final SparseArray<Map<String, Drawable>> RECENT_DRAWABLES = new SparseArray<Map<String, Drawable>>(
 			2);
 
+	/**
+	 * Name of the imported art pack file
+	 */
+	private static final String PACK_FILE = "art.pack";
+
+	private static final Object PACK_LOCK = new Object();
+
+	private static volatile ArtPack pack;
+
+	private static volatile boolean packOpened;
+
+	/**
+	 * Locks held while writing art of an album to disk, selected by the hash of
+	 * the album key
+	 */
+	private static final Object[] FILE_LOCKS = new Object[16];
+
+	static {
+		for (int i = 0; i < FILE_LOCKS.length; i++)
+			FILE_LOCKS[i] = new Object();
+	}
+
 	private static final SparseArray<Drawable> EMPTY_ART = new SparseArray<Drawable>(
 			2);
 
-	private static String digest(Song song) {
-		if (SHA1_DIGEST == null)
-			return null;
+	/**
+	 * Get lock to hold while writing art for album key to disk
+	 *
+	 * @param key
+	 * @return lock
+	 */
+	private static Object getFileLock(final String key) {
+		return FILE_LOCKS[(key.hashCode() & 0x7FFFFFFF) % FILE_LOCKS.length];
+	}
 
-		byte[] value;
+	/**
+	 * Get the SHA-1 hex digest of the given album id
+	 *
+	 * @param albumId
+	 * @return digest or null if SHA-1 is unavailable
+	 */
+	private static String digest(final String albumId) {
+		byte[] digested;
 		try {
-			value = song.getAlbumId().getBytes(CHARSET_UTF8);
+			digested = MessageDigest.getInstance("SHA-1").digest(
+					albumId.getBytes(CHARSET_UTF8));
+		} catch (NoSuchAlgorithmException e) {
+			return null;
 		} catch (UnsupportedEncodingException e) {
 			return null;
 		}
 
-		byte[] digested;
-		synchronized (SHA1_DIGEST) {
-			SHA1_DIGEST.reset();
-			digested = SHA1_DIGEST.digest(value);
+		char[] hex = new char[digested.length * 2];
+		for (int i = 0; i < digested.length; i++) {
+			hex[i * 2] = HEX[(digested[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[digested[i] & 0xF];
 		}
-		String hashed = new BigInteger(1, digested).toString(16);
-		int padding = DIGEST_LENGTH - hashed.length();
-		if (padding > 0) {
-			char[] zeros = new char[padding];
-			Arrays.fill(zeros, '0');
-			hashed = new String(zeros) + hashed;
+		return new String(hex);
+	}
+
+	/**
+	 * Get key used to cache the art for the given song's album
+	 * <p>
+	 * Keys are computed once per album so looking up an already seen album
+	 * doesn't allocate. The keys of the {@link #MAX_KEYS} most recently used
+	 * albums are kept so walking a large catalog doesn't forget the keys of
+	 * displayed albums.
+	 *
+	 * @param song
+	 * @return key or null if unavailable
+	 */
+	static String getKey(final Song song) {
+		final String albumId = song.getAlbumId();
+		String key = KEYS.get(albumId);
+		if (key == null) {
+			key = digest(albumId);
+			if (key != null)
+				KEYS.put(albumId, key);
 		}
-		return hashed;
+		return key;
 	}
 
-	private static Map<String, Drawable> createCacheMap() {
-		return new LinkedHashMap<String, Drawable>(MAX_RECENT, 1.0F) {
+	/**
+	 * Create map that evicts its eldest entries when it exceeds the limit of
+	 * the current tier
+	 *
+	 * @param drawables
+	 *            true to limit to {@link ArtTier#maxDrawables}, false to limit
+	 *            to {@link ArtTier#maxRecent}
+	 * @return map
+	 */
+	private static <V> Map<String, V> createCacheMap(final boolean drawables) {
+		return new LinkedHashMap<String, V>(16, 1.0F) {
 
 			private static final long serialVersionUID = -3434208982358063608L;
 
 			@Override
-			protected boolean removeEldestEntry(
-					Map.Entry<String, Drawable> eldest) {
-				return size() >= MAX_RECENT;
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() >= (drawables ? tier.maxDrawables
+						: tier.maxRecent);
 			}
 		};
 	}
 
-	private static Drawable getCachedArt(final int drawable, final Song song) {
-		final String digest = digest(song);
-		if (digest != null)
-			synchronized (RECENT_ART) {
-				Map<String, Drawable> cache = RECENT_ART.get(drawable);
-				return cache != null ? cache.get(digest) : null;
-			}
-		else
-			return null;
+	private static void trim(final Map<String, ?> cache, final int max) {
+		Iterator<String> keys = cache.keySet().iterator();
+		while (cache.size() > max && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+		}
+	}
+
+	private static Bitmap getCachedBitmap(final String key) {
+		synchronized (RECENT_ART) {
+			return RECENT_ART.get(key);
+		}
+	}
+
+	private static Drawable getCachedDrawable(final int drawable,
+			final String key) {
+		synchronized (RECENT_ART) {
+			Map<String, Drawable> cache = RECENT_DRAWABLES.get(drawable);
+			return cache != null ? cache.get(key) : null;
+		}
 	}
 
 	private static Drawable getEmptyArt(final int drawable,
@@ -176,21 +545,36 @@ public class SongArtWrapper {
 		return cached;
 	}
 
-	private static void putCachedArt(final int drawable, final Song song,
-			final Drawable bitmap) {
-		if (bitmap == null)
-			return;
+	static void putCachedBitmap(final String key, final Bitmap bitmap) {
+		synchronized (RECENT_ART) {
+			RECENT_ART.put(key, bitmap);
+		}
+	}
 
-		final String digest = digest(song);
-		if (digest != null)
-			synchronized (RECENT_ART) {
-				Map<String, Drawable> cache = RECENT_ART.get(drawable);
-				if (cache == null) {
-					cache = createCacheMap();
-					RECENT_ART.put(drawable, cache);
-				}
-				cache.put(digest, bitmap);
+	/**
+	 * Remove art for album key from the memory caches
+	 *
+	 * @param key
+	 */
+	static void removeCachedArt(final String key) {
+		synchronized (RECENT_ART) {
+			RECENT_ART.remove(key);
+			for (int i = 0; i < RECENT_DRAWABLES.size(); i++)
+				RECENT_DRAWABLES.valueAt(i).remove(key);
+		}
+		NOTIFICATION_ART.remove(key);
+	}
+
+	private static void putCachedDrawable(final int drawable,
+			final String key, final Drawable image) {
+		synchronized (RECENT_ART) {
+			Map<String, Drawable> cache = RECENT_DRAWABLES.get(drawable);
+			if (cache == null) {
+				cache = createCacheMap(true);
+				RECENT_DRAWABLES.put(drawable, cache);
 			}
+			cache.put(key, image);
+		}
 	}
 
 	private static Point getSize(final File file) {
@@ -211,7 +595,20 @@ public class SongArtWrapper {
 	 * @return file
 	 */
 	protected static File getArtFile(final File parent, final Song song) {
-		return new File(parent, digest(song) + ".png");
+		return new File(parent, getKey(song) + ART_SUFFIX);
+	}
+
+	/**
+	 * Get file storing the {@link ArtMetadata} of an art file
+	 *
+	 * @param artFile
+	 * @return file
+	 */
+	protected static File getMetadataFile(final File artFile) {
+		String name = artFile.getName();
+		if (name.endsWith(ART_SUFFIX))
+			name = name.substring(0, name.length() - ART_SUFFIX.length());
+		return new File(artFile.getParentFile(), name + METADATA_SUFFIX);
 	}
 
 	/**
@@ -228,6 +625,118 @@ public class SongArtWrapper {
 		return artFolder;
 	}
 
+	/**
+	 * Get imported art pack
+	 * <p>
+	 * The pack is opened on first use
+	 *
+	 * @param context
+	 * @return pack or null if none was imported
+	 */
+	public static ArtPack getPack(final Context context) {
+		if (!packOpened)
+			synchronized (PACK_LOCK) {
+				if (!packOpened) {
+					pack = ArtPack.open(new File(context.getFilesDir(),
+							PACK_FILE));
+					packOpened = true;
+				}
+			}
+		return pack;
+	}
+
+	/**
+	 * Import art pack from given file
+	 * <p>
+	 * The imported pack replaces any previously imported pack. Art cached on
+	 * disk is read before the pack since it is downloaded or revalidated after
+	 * the pack was exported.
+	 *
+	 * @param context
+	 * @param source
+	 * @return number of images imported
+	 * @throws IOException
+	 */
+	public static int importPack(final Context context, final File source)
+			throws IOException {
+		synchronized (PACK_LOCK) {
+			pack = ArtPack.importPack(source, new File(context.getFilesDir(),
+					PACK_FILE));
+			packOpened = true;
+			return pack != null ? pack.size() : 0;
+		}
+	}
+
+	/**
+	 * Export art cached on disk to an art pack
+	 * <p>
+	 * Images are exported as thumbnails large enough for both lists and
+	 * notifications on this device
+	 *
+	 * @param context
+	 * @param destination
+	 * @return number of images exported
+	 * @throws IOException
+	 */
+	public static int exportPack(final Context context, final File destination)
+			throws IOException {
+		Resources resources = context.getResources();
+		int size = Math.max(getListSize(resources),
+				getNotificationSize(resources));
+		return ArtPack.export(getArtDirectory(context), destination, size);
+	}
+
+	/**
+	 * Get maximum size in pixels of art decoded for lists
+	 *
+	 * @param resources
+	 * @return size
+	 */
+	private static int getListSize(final Resources resources) {
+		return Math.round(resources.getDisplayMetrics().density * MAX_SIZE_DP
+				+ 0.5F);
+	}
+
+	/**
+	 * Get size in pixels of the large icon of notifications
+	 *
+	 * @param resources
+	 * @return size or 0 if notifications have no large icon
+	 */
+	private static int getNotificationSize(final Resources resources) {
+		if (SDK_INT >= HONEYCOMB)
+			return resources
+					.getDimensionPixelSize(dimen.notification_large_icon_width);
+		else
+			return 0;
+	}
+
+	/**
+	 * Is art for album key in the imported art pack?
+	 *
+	 * @param key
+	 * @return true if packed, false otherwise
+	 */
+	private boolean isPacked(final String key) {
+		ArtPack pack = getPack(context);
+		return pack != null && key != null && pack.contains(key);
+	}
+
+	/**
+	 * Get encoded art for song from the imported art pack
+	 * <p>
+	 * Packed art is ignored while revalidating it found the art missing on
+	 * the server
+	 *
+	 * @param key
+	 * @return encoded art or null if not in a pack
+	 */
+	private byte[] getPackedArt(final String key) {
+		if (!isPacked(key) || MissingArtCache.get(context).isMissing(key))
+			return null;
+		return getPack(context).get(key);
+	}
+
 	/**
 	 * Is file non-null, existent and non-empty?
 	 *
@@ -244,24 +753,32 @@ public class SongArtWrapper {
 
 	private final int maxSize;
 
-	private final Activity activity;
+	private final int notificationSize;
+
+	private final Context context;
+
+	private final Handler handler;
 
-	private boolean oldArtDeleted;
+	private volatile boolean paused;
 
 	/**
 	 * Create view wrapper to display art for a {@link Song}
 	 *
-	 * @param activity
+	 * @param context
 	 * @param service
 	 */
-	public SongArtWrapper(Activity activity,
+	public SongArtWrapper(final Context context,
 			final AtomicReference<PlayService> service) {
-		this.activity = activity;
-		artFolder = getArtDirectory(activity);
+		this.context = context;
+		detectTier(context);
+		scheduleMaintenance(context);
+		setFlattened(new PlayPreferences(context).isArtFlattened());
+		handler = new Handler(Looper.getMainLooper());
+		artFolder = getArtDirectory(context);
 		this.service = service;
-		Resources resources = activity.getResources();
-		maxSize = Math.round(resources.getDisplayMetrics().density
-				* MAX_SIZE_DP + 0.5F);
+		Resources resources = context.getResources();
+		maxSize = getListSize(resources);
+		notificationSize = getNotificationSize(resources);
 	}
 
 	/**
@@ -272,20 +789,68 @@ public class SongArtWrapper {
 	 */
 	protected Bitmap decode(final File file) {
 		Point size = getSize(file);
-		int currWidth = size.x;
-		int currHeight = size.y;
 
+		Options options = new Options();
+		options.inDither = false;
+		options.inSampleSize = getSampleSize(size.x, size.y);
+		options.inPreferredConfig = tier.config;
+		long start = System.nanoTime();
+		Bitmap decoded = BitmapFactory.decodeFile(file.getAbsolutePath(),
+				options);
+		ArtStats.DECODE.addSince(start);
+		if (decoded == null)
+			Log.d(TAG, "Decoding " + file.getName() + " failed");
+		return decoded;
+	}
+
+	/**
+	 * Decode {@link Bitmap} from given encoded image data
+	 *
+	 * @param data
+	 * @return bitmap
+	 */
+	protected Bitmap decode(final byte[] data) {
+		Options bounds = new Options();
+		bounds.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+
+		Options options = new Options();
+		options.inDither = false;
+		options.inSampleSize = getSampleSize(bounds.outWidth, bounds.outHeight);
+		options.inPreferredConfig = tier.config;
+		long start = System.nanoTime();
+		Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length,
+				options);
+		ArtStats.DECODE.addSince(start);
+		if (decoded == null)
+			Log.d(TAG, "Decoding " + data.length + " bytes failed");
+		return decoded;
+	}
+
+	private int getSampleSize(int width, int height) {
 		int scale = 1;
-		while (currWidth >= maxSize || currHeight >= maxSize) {
-			currWidth /= 2;
-			currHeight /= 2;
+		while (width >= maxSize || height >= maxSize) {
+			width /= 2;
+			height /= 2;
 			scale *= 2;
 		}
+		return scale;
+	}
+
+	/**
+	 * Decode {@link Bitmap} from given {@link File} at the size of a
+	 * notification's large icon
+	 *
+	 * @param file
+	 * @return bitmap
+	 */
+	protected Bitmap decodeNotificationArt(final File file) {
+		Point size = getSize(file);
 
 		Options options = new Options();
 		options.inDither = false;
-		options.inSampleSize = scale;
-		options.inPreferredConfig = ARGB_8888;
+		options.inSampleSize = getNotificationSampleSize(size.x, size.y);
+		options.inPreferredConfig = tier.config;
 		Bitmap decoded = BitmapFactory.decodeFile(file.getAbsolutePath(),
 				options);
 		if (decoded == null)
@@ -294,80 +859,623 @@ public class SongArtWrapper {
 	}
 
 	/**
-	 * Write {@link Bitmap} to given {@link File}
+	 * Decode {@link Bitmap} from given encoded image data at the size of a
+	 * notification's large icon
 	 *
-	 * @param bitmap
-	 * @param file
+	 * @param data
 	 * @return bitmap
 	 */
-	protected Bitmap write(final Bitmap bitmap, final File file) {
-		FileOutputStream stream = null;
+	protected Bitmap decodeNotificationArt(final byte[] data) {
+		Options bounds = new Options();
+		bounds.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+
+		Options options = new Options();
+		options.inDither = false;
+		options.inSampleSize = getNotificationSampleSize(bounds.outWidth,
+				bounds.outHeight);
+		options.inPreferredConfig = tier.config;
+		Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length,
+				options);
+		if (decoded == null)
+			Log.d(TAG, "Decoding " + data.length + " bytes failed");
+		return decoded;
+	}
+
+	/**
+	 * Get largest sample size that keeps both dimensions at least the size of
+	 * a notification's large icon
+	 *
+	 * @param width
+	 * @param height
+	 * @return sample size
+	 */
+	private int getNotificationSampleSize(int width, int height) {
+		int scale = 1;
+		while (width / 2 >= notificationSize && height / 2 >= notificationSize) {
+			width /= 2;
+			height /= 2;
+			scale *= 2;
+		}
+		return scale;
+	}
+
+	private void updateDrawable(final ImageView view, final Drawable art) {
+		view.setTag(null);
+		view.setImageDrawable(art);
+	}
+
+	/**
+	 * Pause or resume loading art
+	 * <p>
+	 * Requests made while paused are queued and the most recent ones are
+	 * loaded first once resumed
+	 *
+	 * @param paused
+	 * @return this wrapper
+	 */
+	public SongArtWrapper setPaused(final boolean paused) {
+		this.paused = paused;
+		if (!paused)
+			QUEUE.wake();
+		return this;
+	}
+
+	public void onScrollStateChanged(final AbsListView view,
+			final int scrollState) {
+		setPaused(scrollState == SCROLL_STATE_FLING);
+	}
+
+	public void onScroll(final AbsListView view, final int firstVisibleItem,
+			final int visibleItemCount, final int totalItemCount) {
+		// Intentionally left blank
+	}
+
+	/**
+	 * Update view with art for song album
+	 *
+	 * @param artView
+	 * @param drawable
+	 *            a layer drawable with an album art layer
+	 * @param song
+	 */
+	public void update(final ImageView artView, final int drawable,
+			final Song song) {
+		update(artView, drawable, song, song);
+	}
+
+	private void putNotificationArt(final Song song, final Bitmap bitmap) {
+		if (bitmap == null || notificationSize <= 0)
+			return;
+
+		final String key = getKey(song);
+		if (key == null)
+			return;
+
+		// Scale down to fit the large icon keeping the aspect ratio
+		Bitmap art = bitmap;
+		int width = art.getWidth();
+		int height = art.getHeight();
+		int largest = Math.max(width, height);
+		if (largest > notificationSize)
+			art = Bitmap.createScaledBitmap(bitmap,
+					Math.max(1, width * notificationSize / largest),
+					Math.max(1, height * notificationSize / largest), true);
+		NOTIFICATION_ART.put(key, art);
+	}
+
+	/**
+	 * Download art for song album to the given file
+	 * <p>
+	 * Albums the server has no art for are added to the
+	 * {@link MissingArtCache} and not requested again until it expires.
+	 *
+	 * @param song
+	 * @param artFile
+	 * @param counters
+	 *            of the request
+	 * @return decoded art or null if downloading or decoding failed
+	 */
+	protected Bitmap download(final Song song, final File artFile,
+			final ArtStats.Counters counters) {
+		byte[] art = fetch(context, service.get(), song, artFile, counters);
+		return art != null ? decode(art) : null;
+	}
+
+	/**
+	 * Download art for song album to the disk cache if it isn't already
+	 * available locally
+	 * <p>
+	 * The downloaded art is not decoded and no wrapper is created so warming
+	 * doesn't change the art tier or any other state of displayed art. This
+	 * blocks while downloading and should not be called from the main thread.
+	 *
+	 * @param context
+	 * @param service
+	 * @param song
+	 * @return number of bytes downloaded
+	 */
+	public static int warm(final Context context, final PlayService service,
+			final Song song) {
+		final String key = getKey(song);
+		if (key == null)
+			return 0;
+		ArtPack pack = getPack(context);
+		if (pack != null && pack.contains(key))
+			return 0;
+		File artFile = getArtFile(getArtDirectory(context), song);
+		if (isValid(artFile))
+			return 0;
+
+		byte[] art = fetch(context, service, song, artFile,
+				ArtStats.BACKGROUND);
+		return art != null ? art.length : 0;
+	}
+
+	/**
+	 * Download art for song album to the given file
+	 * <p>
+	 * Only one thread downloads the art of an album at a time, threads that
+	 * waited for another download of the same album read the art it wrote
+	 *
+	 * @param context
+	 * @param service
+	 * @param song
+	 * @param artFile
+	 * @param counters
+	 *            of the request
+	 * @return encoded art or null if downloading failed
+	 */
+	private static byte[] fetch(final Context context,
+			final PlayService service, final Song song, final File artFile,
+			final ArtStats.Counters counters) {
+		final String key = getKey(song);
+		if (service == null || key == null)
+			return null;
+		final MissingArtCache missing = MissingArtCache.get(context);
+		if (missing.isMissing(key)) {
+			counters.negativeHits.incrementAndGet();
+			return null;
+		}
+
+		synchronized (getFileLock(key)) {
+			if (isValid(artFile)) {
+				counters.diskHits.incrementAndGet();
+				return read(artFile);
+			}
+			return fetch(service, song, key, artFile, missing, counters);
+		}
+	}
+
+	/**
+	 * Download art for song album to the given file while holding the file
+	 * lock of the album
+	 *
+	 * @param service
+	 * @param song
+	 * @param key
+	 * @param artFile
+	 * @param missing
+	 * @param counters
+	 *            of the request
+	 * @return encoded art or null if downloading failed
+	 */
+	private static byte[] fetch(final PlayService service, final Song song,
+			final String key, final File artFile,
+			final MissingArtCache missing, final ArtStats.Counters counters) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				BUFFER_SIZE);
+		final ArtMetadata metadata = new ArtMetadata();
+		File tempFile = null;
+		OutputStream output = null;
+		boolean found = true;
+		boolean downloaded = false;
+		counters.networkFetches.incrementAndGet();
+		long start = System.nanoTime();
 		try {
-			stream = new FileOutputStream(file);
-			if (!bitmap.compress(PNG, 100, stream))
-				Log.d(TAG, "Compressing " + file.getName() + " failed");
-			return bitmap;
-		} catch (FileNotFoundException e) {
-			return bitmap;
+			tempFile = createTempFile(artFile);
+			output = openTee(bytes, tempFile);
+			found = service.getArt(song, output, metadata);
+			downloaded = found;
+		} catch (IOException e) {
+			Log.d(TAG, "Downloading art for " + song.id + " failed", e);
+		} finally {
+			if (!close(output))
+				downloaded = false;
+		}
+		ArtStats.DOWNLOAD.addSince(start);
+
+		if (downloaded && bytes.size() == 0)
+			found = downloaded = false;
+		if (!found)
+			missing.add(key);
+		if (!downloaded || !tempFile.renameTo(artFile)) {
+			counters.networkFailures.incrementAndGet();
+			if (tempFile != null)
+				tempFile.delete();
+			return null;
+		}
+		metadata.write(getMetadataFile(artFile));
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Create a new empty file to download art to before moving it into place
+	 * <p>
+	 * Every download gets its own file so concurrent writers never share one
+	 *
+	 * @param artFile
+	 * @return file
+	 * @throws IOException
+	 */
+	private static File createTempFile(final File artFile)
+			throws IOException {
+		return File.createTempFile(artFile.getName(), TEMP_SUFFIX,
+				artFile.getParentFile());
+	}
+
+	/**
+	 * Read encoded art from file
+	 *
+	 * @param file
+	 * @return encoded art or null if reading failed
+	 */
+	private static byte[] read(final File file) {
+		byte[] data = new byte[(int) file.length()];
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(file));
+			input.readFully(data);
+			return data;
+		} catch (IOException e) {
+			Log.d(TAG, "Reading " + file.getName() + " failed", e);
+			return null;
 		} finally {
-			if (stream != null)
+			if (input != null)
 				try {
-					stream.close();
+					input.close();
 				} catch (IOException ignored) {
 					// Ignored
 				}
 		}
 	}
 
-	private void updateDrawable(final ImageView view, final Drawable art) {
-		view.setTag(null);
-		view.setImageDrawable(art);
+	/**
+	 * Open stream that writes to both the given buffer and file
+	 *
+	 * @param bytes
+	 * @param file
+	 * @return stream
+	 * @throws IOException
+	 */
+	private static OutputStream openTee(final ByteArrayOutputStream bytes,
+			final File file) throws IOException {
+		return new TeeOutputStream(bytes, new BufferedOutputStream(
+				new FileOutputStream(file), BUFFER_SIZE));
 	}
 
 	/**
-	 * Delete file or directory include child files
+	 * Close stream
 	 *
-	 * @param file
+	 * @param output
+	 *            may be null
+	 * @return true if closed, false if closing failed
+	 */
+	private static boolean close(final OutputStream output) {
+		if (output == null)
+			return true;
+		try {
+			output.close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Revalidate art on disk or in the pack in the background if it was
+	 * fetched longer ago than {@link #REVALIDATE_AGE}
+	 * <p>
+	 * Art cached before metadata was recorded and packed art used for the
+	 * first time are treated as fetched now
+	 *
+	 * @param song
+	 * @param key
+	 * @param artFile
+	 */
+	private void revalidateIfStale(final Song song, final String key,
+			final File artFile) {
+		final File metadataFile = getMetadataFile(artFile);
+		final ArtMetadata metadata = ArtMetadata.read(metadataFile);
+		final long now = System.currentTimeMillis();
+		if (metadata == null) {
+			ArtMetadata created = new ArtMetadata();
+			created.fetchedAt = now;
+			created.write(metadataFile);
+			return;
+		}
+		if (now - metadata.fetchedAt < REVALIDATE_AGE)
+			return;
+
+		QUEUE.addBackground("revalidate" + key, new ArtQueue.Request() {
+
+			public void run() {
+				revalidate(song, key, artFile, metadata);
+			}
+		});
+	}
+
+	/**
+	 * Revalidate art on disk or in the pack with a conditional request
+	 * <p>
+	 * Updated art replaces the art on disk and in memory and is used instead
+	 * of packed art from then on, art no longer on the server is deleted. The
+	 * file lock of the album is held while revalidating
+	 * so downloads of the same album wait for it.
+	 *
+	 * @param song
+	 * @param key
+	 * @param artFile
+	 * @param metadata
 	 */
-	private void delete(final File file) {
-		if (!file.exists())
+	protected void revalidate(final Song song, final String key,
+			final File artFile, final ArtMetadata metadata) {
+		final PlayService playService = service.get();
+		if (playService == null)
+			return;
+
+		synchronized (getFileLock(key)) {
+			if (isValid(artFile) || isPacked(key))
+				revalidate(playService, song, key, artFile, metadata);
+		}
+	}
+
+	private void revalidate(final PlayService playService, final Song song,
+			final String key, final File artFile, final ArtMetadata metadata) {
+		final File metadataFile = getMetadataFile(artFile);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				BUFFER_SIZE);
+		File tempFile = null;
+		OutputStream output = null;
+		ArtMetadata.Status status = null;
+		ArtStats.BACKGROUND.networkFetches.incrementAndGet();
+		try {
+			tempFile = createTempFile(artFile);
+			output = openTee(bytes, tempFile);
+			status = playService.revalidateArt(song, output, metadata);
+		} catch (IOException e) {
+			Log.d(TAG, "Revalidating art for " + song.id + " failed", e);
+		} finally {
+			if (!close(output))
+				status = null;
+		}
+
+		if (status != ArtMetadata.Status.MODIFIED && tempFile != null)
+			tempFile.delete();
+		if (status == null) {
+			ArtStats.BACKGROUND.networkFailures.incrementAndGet();
 			return;
+		}
 
-		if (file.isDirectory()) {
-			Log.d(TAG, "Deleting art directory: " + file.getName());
-			File[] children = file.listFiles();
-			if (children != null)
-				for (File child : children)
-					delete(child);
+		switch (status) {
+		case NOT_MODIFIED:
+			metadata.write(metadataFile);
+			break;
+		case MISSING:
+			artFile.delete();
+			if (isPacked(key)) {
+				// Revalidate packed art as soon as it is used again
+				metadata.fetchedAt = 0;
+				metadata.write(metadataFile);
+			} else
+				metadataFile.delete();
+			removeCachedArt(key);
+			MissingArtCache.get(context).add(key);
+			break;
+		case MODIFIED:
+			if (!tempFile.renameTo(artFile)) {
+				tempFile.delete();
+				return;
+			}
+			metadata.write(metadataFile);
+			removeCachedArt(key);
+			Bitmap bitmap = decode(bytes.toByteArray());
+			if (bitmap != null)
+				putCachedBitmap(key, bitmap);
+			Log.d(TAG, "Updated art for album " + song.getAlbumId());
+			break;
 		}
-		file.delete();
 	}
 
 	/**
-	 * Delete art in old folders
+	 * Load art for song album sized for a notification's large icon into
+	 * memory in the background
+	 *
+	 * @param song
+	 * @param download
+	 *            true to download art not available locally
+	 * @param callback
+	 *            run on the main thread when art was loaded, may be null
 	 */
-	private void deleteOldArt() {
-		if (oldArtDeleted)
+	public void loadNotificationArt(final Song song, final boolean download,
+			final Runnable callback) {
+		if (song == null || notificationSize <= 0)
+			return;
+		if (getNotificationArt(song) != null) {
+			ArtStats.NOTIFICATIONS.memoryHits.incrementAndGet();
 			return;
+		}
+
+		QUEUE.addBackground("notification" + song.getAlbumId(),
+				new ArtQueue.Request() {
+
+					public void run() {
+						File artFile = getArtFile(artFolder, song);
+						String key = getKey(song);
+						byte[] packed;
+						if (isValid(artFile)) {
+							ArtStats.NOTIFICATIONS.diskHits.incrementAndGet();
+							putNotificationArt(song,
+									decodeNotificationArt(artFile));
+						} else if ((packed = getPackedArt(key)) != null) {
+							ArtStats.NOTIFICATIONS.packHits.incrementAndGet();
+							putNotificationArt(song,
+									decodeNotificationArt(packed));
+						} else if (download) {
+							byte[] art = fetch(context, service.get(),
+									song, artFile, ArtStats.NOTIFICATIONS);
+							if (art != null)
+								putNotificationArt(song,
+										decodeNotificationArt(art));
+						}
 
-		File root = artFolder.getParentFile();
-		delete(new File(root, ART_FOLDER));
-		for (int i = 0; i < ART_VERSION; i++)
-			delete(new File(root, ART_FOLDER + i));
-		oldArtDeleted = true;
+						if (callback != null
+								&& getNotificationArt(song) != null)
+							handler.post(callback);
+					}
+				});
 	}
 
 	/**
-	 * Update view with art for song album
+	 * Get drawable for song album from the memory cache
+	 * <p>
+	 * The drawable is created from art already decoded for another drawable
+	 * when available so each album is only decoded and held in memory once
 	 *
-	 * @param artView
 	 * @param drawable
 	 *            a layer drawable with an album art layer
 	 * @param song
+	 * @return drawable or null if the album art is not in memory
 	 */
-	public void update(final ImageView artView, final int drawable,
-			final Song song) {
-		update(artView, drawable, song, song);
+	protected Drawable getCachedArt(final int drawable, final Song song) {
+		final String key = getKey(song);
+		if (key == null)
+			return null;
+
+		Drawable image = getCachedDrawable(drawable, key);
+		if (image != null)
+			return image;
+
+		Bitmap bitmap = getCachedBitmap(key);
+		return bitmap != null ? wrap(drawable, key, bitmap) : null;
+	}
+
+	/**
+	 * Wrap art in the album art layer of the given layer drawable
+	 * <p>
+	 * The created drawable is added to the memory cache
+	 *
+	 * @param drawable
+	 * @param key
+	 * @param bitmap
+	 * @return drawable
+	 */
+	private Drawable wrap(final int drawable, final String key,
+			final Bitmap bitmap) {
+		Resources resources = context.getResources();
+		LayerDrawable layers = (LayerDrawable) resources.getDrawable(drawable);
+		layers.setDrawableByLayerId(id.i_album_art, new BitmapDrawable(
+				resources, bitmap));
+		Drawable image = flattened ? flatten(layers) : layers;
+		putCachedDrawable(drawable, key, image);
+		return image;
+	}
+
+	/**
+	 * Draw all the layers of the given drawable into a single bitmap at its
+	 * intrinsic size
+	 *
+	 * @param layers
+	 * @return drawable of flattened bitmap
+	 */
+	private Drawable flatten(final LayerDrawable layers) {
+		int width = layers.getIntrinsicWidth();
+		int height = layers.getIntrinsicHeight();
+		if (width <= 0 || height <= 0)
+			return layers;
+
+		// The frame is transparent around the art so an alpha channel is
+		// required regardless of the tier
+		Bitmap flat = Bitmap.createBitmap(width, height, ARGB_8888);
+		layers.setBounds(0, 0, width, height);
+		layers.draw(new Canvas(flat));
+		return new BitmapDrawable(context.getResources(), flat);
+	}
+
+	/**
+	 * Load art for song album from the memory cache, disk cache, art pack or
+	 * network
+	 * <p>
+	 * Loaded art is added to the memory cache. The request is counted where
+	 * its art was found, art decoded into memory while the request was queued
+	 * is counted as a memory hit.
+	 *
+	 * @param song
+	 * @param request
+	 * @param download
+	 *            true to download art not available locally
+	 * @param counters
+	 *            of the request
+	 * @return art or null if not available or the request was cancelled
+	 */
+	protected Bitmap load(final Song song, final ArtQueue.Request request,
+			final boolean download, final ArtStats.Counters counters) {
+		final String key = getKey(song);
+		if (key == null)
+			return null;
+
+		Bitmap bitmap = getCachedBitmap(key);
+		if (bitmap != null) {
+			counters.memoryHits.incrementAndGet();
+			return bitmap;
+		}
+
+		File artFile = getArtFile(artFolder, song);
+		byte[] packed;
+		if (isValid(artFile)) {
+			counters.diskHits.incrementAndGet();
+			artFile.setLastModified(System.currentTimeMillis());
+			bitmap = decode(artFile);
+			if (download)
+				revalidateIfStale(song, key, artFile);
+		} else if ((packed = getPackedArt(key)) != null) {
+			counters.packHits.incrementAndGet();
+			bitmap = decode(packed);
+			if (download)
+				revalidateIfStale(song, key, artFile);
+		} else if (!download || request.isCancelled())
+			return null;
+		else
+			bitmap = download(song, artFile, counters);
+
+		if (bitmap != null)
+			putCachedBitmap(key, bitmap);
+		return bitmap;
+	}
+
+	/**
+	 * Load art for song album into the disk and memory caches in the
+	 * background
+	 * <p>
+	 * Prefetching only runs when no art is being loaded for views
+	 *
+	 * @param song
+	 * @param download
+	 *            true to download art not available locally
+	 */
+	public void prefetch(final Song song, final boolean download) {
+		if (song == null)
+			return;
+		final String key = getKey(song);
+		if (key == null || getCachedBitmap(key) != null)
+			return;
+
+		QUEUE.addBackground(key, new ArtQueue.Request() {
+
+			public void run() {
+				load(song, this, download, ArtStats.BACKGROUND);
+			}
+		});
 	}
 
 	/**
@@ -382,58 +1490,48 @@ public class SongArtWrapper {
 	public void update(final ImageView artView, final int drawable,
 			final Song song, final Object tag) {
 		if (song == null) {
-			updateDrawable(artView, getEmptyArt(drawable, activity));
+			QUEUE.cancel(artView);
+			updateDrawable(artView, getEmptyArt(drawable, context));
 			return;
 		}
 
 		Drawable cachedBitmap = getCachedArt(drawable, song);
 		if (cachedBitmap != null) {
+			ArtStats.VIEWS.memoryHits.incrementAndGet();
+			QUEUE.cancel(artView);
 			updateDrawable(artView, cachedBitmap);
 			return;
 		}
 
-		updateDrawable(artView, getEmptyArt(drawable, activity));
+		updateDrawable(artView, getEmptyArt(drawable, context));
 		artView.setTag(tag);
+		final long placeholderStart = System.nanoTime();
 
-		EXECUTORS.execute(new Runnable() {
+		QUEUE.add(artView, new ArtQueue.Request() {
+
+			@Override
+			protected boolean isReady() {
+				return !paused;
+			}
 
 			public void run() {
-				deleteOldArt();
-
-				Drawable image = getCachedArt(drawable, song);
-
-				if (image == null) {
-					File artFile = getArtFile(artFolder, song);
-					Bitmap bitmap = null;
-					if (isValid(artFile))
-						bitmap = decode(artFile);
-					else if (service.get().getArt(song, artFile)) {
-						bitmap = decode(artFile);
-						if (bitmap != null)
-							write(bitmap, artFile);
-					}
+				final Bitmap bitmap = load(song, this, true, ArtStats.VIEWS);
+				if (isCancelled())
+					return;
 
-					if (bitmap != null) {
-						image = new BitmapDrawable(artView.getResources(),
-								bitmap);
-						LayerDrawable layers = (LayerDrawable) activity
-								.getResources().getDrawable(drawable);
-						layers.setDrawableByLayerId(id.i_album_art, image);
-						putCachedArt(drawable, song, layers);
-						image = layers;
-					}
-				}
+				final Drawable image = bitmap != null ? wrap(drawable,
+						getKey(song), bitmap) : null;
 
-				final Drawable imageDrawable = image;
-				activity.runOnUiThread(new Runnable() {
+				handler.post(new Runnable() {
 
 					public void run() {
 						if (tag.equals(artView.getTag()))
-							if (imageDrawable != null)
-								updateDrawable(artView, imageDrawable);
-							else
+							if (image != null) {
+								ArtStats.PLACEHOLDER.addSince(placeholderStart);
+								updateDrawable(artView, image);
+							} else
 								updateDrawable(artView,
-										getEmptyArt(drawable, activity));
+										getEmptyArt(drawable, context));
 					}
 				});
 			}